@@ -0,0 +1,27 @@
+package jockey.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with the GC profiler attached, so allocation rates are reported next to throughput
+ * accepts the usual JMH command line options, e.g. a benchmark regex or -p frameSize=2048
+ * @author jockey
+ */
+public class Benchmarks
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        var cmd = new CommandLineOptions(args);
+        var options = new OptionsBuilder()
+            .parent(cmd)
+            .addProfiler(GCProfiler.class)
+            .jvmArgsAppend("-Djava.awt.headless=true")
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+package jockey.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.ConstantQTransform;
+import jockey.SpectrumVisualizer;
+
+/**
+ * throughput of the constant-Q transform per frame, compared to the FFT of the same length alone
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstantQBenchmark
+{
+    @Param({"8000", "44100"})
+    float sampleRate;
+
+    @Param({"12", "24"})
+    int octaveParts;
+
+    ConstantQTransform cq;
+    SpectrumVisualizer.Workspace workspace;
+    double[] samples;
+    double[] magnitudes;
+
+    @Setup
+    public void setup()
+    {
+        cq = ConstantQTransform.of(sampleRate, sampleRate / 2, 1.0/octaveParts);
+        workspace = new SpectrumVisualizer.Workspace(cq.getFftSize());
+        var random = new Random(42);
+        samples = new double[cq.getFftSize()];
+        for (int i = 0; i < samples.length; i++) samples[i] = random.nextGaussian() * Short.MAX_VALUE / 4;
+        magnitudes = new double[cq.getBars()];
+    }
+
+    @Benchmark
+    public double[] constantQ()
+    {
+        cq.getSpectrum(workspace, samples, 1, false, 5e6, magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public double[] fftOnly()
+    {
+        SpectrumVisualizer.transform(workspace, samples);
+        return magnitudes;
+    }
+}
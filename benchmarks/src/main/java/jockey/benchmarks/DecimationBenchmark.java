@@ -0,0 +1,70 @@
+package jockey.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.Decimator;
+import jockey.FrameAnalyzer;
+import jockey.FrequencyBinMap;
+import jockey.WindowFunction;
+
+/**
+ * throughput of analysing one hop of 44.1 kHz audio, with and without decimation, for bars up to the frequency max
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimationBenchmark
+{
+    private static final float SAMPLE_RATE = 44100;
+    private static final int FFT_SIZE = 16384;
+    private static final int HOP_SIZE = 1024;
+
+    @Param({"1000", "4000"})
+    float frequencyMax;
+
+    FrameAnalyzer full, decimated;
+    double[][] block;
+    long frame;
+
+    @Setup
+    public void setup()
+    {
+        int factor = Decimator.factor(SAMPLE_RATE, frequencyMax, FFT_SIZE, HOP_SIZE);
+        var fullMap = FrequencyBinMap.of(SAMPLE_RATE, FFT_SIZE, frequencyMax, false, 0, false);
+        var reducedMap = FrequencyBinMap.of(SAMPLE_RATE / factor, FFT_SIZE / factor, frequencyMax, false, 0, false);
+        full = new FrameAnalyzer(1, HOP_SIZE, HOP_SIZE, 1, WindowFunction.HANN, false, fullMap, null, false, 5e6, null);
+        decimated = new FrameAnalyzer(1, HOP_SIZE, HOP_SIZE, factor, WindowFunction.HANN, false, reducedMap, null, false, 5e6, null);
+        var random = new Random(42);
+        block = new double[1][HOP_SIZE];
+        for (int i = 0; i < HOP_SIZE; i++) block[0][i] = random.nextGaussian() * Short.MAX_VALUE / 4;
+    }
+
+    @Benchmark
+    public int fullRate()
+    {
+        return full.process(block, HOP_SIZE, frame++, 0);
+    }
+
+    @Benchmark
+    public int decimated()
+    {
+        return decimated.process(block, HOP_SIZE, frame++, 0);
+    }
+}
@@ -0,0 +1,51 @@
+package jockey.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.Complex;
+import jockey.SpectrumVisualizer;
+
+/**
+ * throughput of the naive DFT, kept to small sizes since it is quadratic
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DftBenchmark
+{
+    @Param({"256", "1024", "2048"})
+    int frameSize;
+
+    double[] samples;
+
+    @Setup
+    public void setup()
+    {
+        var random = new Random(42);
+        samples = new double[frameSize];
+        for (int i = 0; i < frameSize; i++) samples[i] = random.nextGaussian();
+    }
+
+    @Benchmark
+    public Complex[] dft()
+    {
+        return SpectrumVisualizer.dft(samples);
+    }
+}
@@ -0,0 +1,128 @@
+package jockey.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.Complex;
+import jockey.FrequencyBinMap;
+import jockey.RealFFT;
+import jockey.SpectrumVisualizer;
+
+/**
+ * throughput of the FFT and of the full spectrum computation per frame
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FftBenchmark
+{
+    static final float SAMPLE_RATE = 44100f;
+
+    @Param({"256", "1024", "1764", "2048", "4096", "16384", "65536"})
+    int frameSize;
+
+    @Param({"false", "true"})
+    boolean octaveScale;
+
+    double[] samples;
+    double step;
+    double[] frequencyBins;
+    FrequencyBinMap binMap;
+    SpectrumVisualizer.Workspace workspace;
+    double[] magnitudes;
+    RealFFT rfft;
+    double[] re, im;
+    float[] samplesFloat, reFloat, imFloat;
+    SpectrumVisualizer.FloatWorkspace floatWorkspace;
+
+    @Setup
+    public void setup()
+    {
+        var random = new Random(42);
+        samples = new double[frameSize];
+        for (int i = 0; i < frameSize; i++) samples[i] = random.nextGaussian() * Short.MAX_VALUE / 4;
+
+        step = SAMPLE_RATE / frameSize;
+        frequencyBins = SpectrumVisualizer.makeFrequencyBins(SAMPLE_RATE / 2, step, octaveScale, 1.0/12);
+        binMap = FrequencyBinMap.of(SAMPLE_RATE, frameSize, SAMPLE_RATE / 2, octaveScale, 1.0/12, false);
+        workspace = new SpectrumVisualizer.Workspace(frameSize);
+        magnitudes = new double[binMap.getBars()];
+        rfft = RealFFT.forSize(frameSize);
+        re = new double[rfft.bins()];
+        im = new double[rfft.bins()];
+        samplesFloat = new float[frameSize];
+        for (int i = 0; i < frameSize; i++) samplesFloat[i] = (float) samples[i];
+        reFloat = new float[rfft.bins()];
+        imFloat = new float[rfft.bins()];
+        floatWorkspace = new SpectrumVisualizer.FloatWorkspace(frameSize);
+    }
+
+    @Benchmark
+    public Complex[] fft()
+    {
+        return SpectrumVisualizer.fft(samples);
+    }
+
+    @Benchmark
+    public double[] getSpectrum()
+    {
+        return SpectrumVisualizer.getSpectrum(samples, step, true, frequencyBins, false, 5e6, SAMPLE_RATE / 2);
+    }
+
+    @Benchmark
+    public double[] getSpectrumDecibel()
+    {
+        return SpectrumVisualizer.getSpectrum(samples, step, true, frequencyBins, true, 5e6, SAMPLE_RATE / 2);
+    }
+
+    @Benchmark
+    public double[] realFft()
+    {
+        rfft.transform(samples, re, im);
+        return re;
+    }
+
+    @Benchmark
+    public float[] realFftFloat()
+    {
+        rfft.transform(samplesFloat, reFloat, imFloat);
+        return reFloat;
+    }
+
+    @Benchmark
+    public double[] getSpectrumBinMap()
+    {
+        SpectrumVisualizer.getSpectrum(workspace, samples, binMap, false, 5e6, magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public double[] getSpectrumBinMapDecibel()
+    {
+        SpectrumVisualizer.getSpectrum(workspace, samples, binMap, true, 5e6, magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public double[] getSpectrumBinMapFloat()
+    {
+        SpectrumVisualizer.getSpectrum(floatWorkspace, samplesFloat, binMap, false, 5e6, magnitudes);
+        return magnitudes;
+    }
+}
@@ -0,0 +1,46 @@
+package jockey.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.SpectrumVisualizer;
+
+/**
+ * throughput of building the frequency bins (bars) for linear and octave scales
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrequencyBinsBenchmark
+{
+    static final float SAMPLE_RATE = 44100f;
+
+    @Param({"256", "2048", "16384", "65536"})
+    int frameSize;
+
+    @Param({"false", "true"})
+    boolean octaveScale;
+
+    @Param({"12"})
+    int octaveParts;
+
+    @Benchmark
+    public double[] makeFrequencyBins()
+    {
+        return SpectrumVisualizer.makeFrequencyBins(SAMPLE_RATE / 2, SAMPLE_RATE / frameSize, octaveScale, 1.0/octaveParts);
+    }
+}
@@ -0,0 +1,71 @@
+package jockey.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jockey.PcmDecoder;
+
+/**
+ * throughput of converting a read buffer of 16 bit PCM into samples, as done for every frame while playing
+ * toDoubles allocates its result, decode reuses the decoder and the sample buffer
+ * @author jockey
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmDecoderBenchmark
+{
+    @Param({"256", "2048", "16384", "65536"})
+    int frameSize;
+
+    @Param({"1", "2", "8"})
+    int channels;
+
+    @Param({"false", "true"})
+    boolean bigEndian;
+
+    AudioFormat format;
+    byte[] bytes;
+    PcmDecoder decoder;
+    double[] samples;
+
+    @Setup
+    public void setup()
+    {
+        format = new AudioFormat(44100f, 16, channels, true, bigEndian);
+        bytes = new byte[frameSize * format.getFrameSize()];
+        new Random(42).nextBytes(bytes);
+        decoder = new PcmDecoder(format);
+        samples = new double[frameSize];
+    }
+
+    @Benchmark
+    public double[] toDoubles()
+    {
+        return PcmDecoder.toDoubles(format, bytes);
+    }
+
+    @Benchmark
+    public double[] decode()
+    {
+        decoder.decode(bytes, frameSize, samples, 0);
+        return samples;
+    }
+}
@@ -0,0 +1,73 @@
+package jockey;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * source of audio frames, delivering both the raw bytes for playback and the decoded samples for analysis
+ * @author jockey
+ */
+public interface AudioSource extends Closeable
+{
+    AudioFormat getFormat();
+
+    /**
+     * @return the length in frames, or {@link AudioSystem#NOT_SPECIFIED} if unknown (e.g. microphone input)
+     */
+    long getFrameLength();
+
+    /**
+     * read up to frames frames
+     * the raw frames are copied into bytes starting at index 0, unless bytes is null
+     * the decoded samples (channels averaged together) are written into samples starting at index offset
+     * @return the number of frames read, or -1 at the end of the audio
+     */
+    int read(byte[] bytes, double[] samples, int offset, int frames) throws IOException;
+
+    /**
+     * same as {@link #read(byte[], double[], int, int)}, but keeping the channels apart:
+     * samples[c] receives the samples of channel c
+     */
+    int readChannels(byte[] bytes, double[][] samples, int offset, int frames) throws IOException;
+
+    /**
+     * whether {@link #seek(long)} is supported
+     */
+    default boolean isSeekable()
+    {
+        return false;
+    }
+
+    /**
+     * continue reading at the given frame
+     */
+    default void seek(long frame) throws IOException
+    {
+        throw new UnsupportedOperationException("audio source is not seekable");
+    }
+
+    /**
+     * open an audio file, memory mapping it if it is a PCM WAV file
+     */
+    static AudioSource open(File file) throws IOException, UnsupportedAudioFileException
+    {
+        if (MappedWavReader.isSupported(file)) return new MappedWavReader(file);
+        return new StreamAudioSource(AudioSystem.getAudioInputStream(file));
+    }
+
+    /**
+     * open the default microphone in mono, captured on its own thread, see {@link CaptureAudioSource}
+     * @param lineBufferSize size of the line's buffer in bytes
+     */
+    static CaptureAudioSource microphone(float sampleRate, int sampleSizeInBits, int lineBufferSize) throws LineUnavailableException
+    {
+        var format = new AudioFormat(sampleRate, sampleSizeInBits, 1, true, true);
+        return CaptureAudioSource.open(format, lineBufferSize);
+    }
+}
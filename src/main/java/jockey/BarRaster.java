@@ -0,0 +1,114 @@
+package jockey;
+
+import java.util.Arrays;
+
+import javafx.scene.paint.Color;
+
+/**
+ * draws spectrum bars straight into an array of ARGB pixels, to be uploaded to the screen as one image
+ * colors come from a lookup table computed once, and the work per frame is one pass over the bars and one over the
+ * pixels, so it neither grows with the number of bars beyond that nor creates any objects
+ *
+ * bars are spread over the columns of the image; if there are more bars than columns, a column shows the highest of
+ * its bars. several channels are drawn as strips on top of each other
+ */
+class BarRaster
+{
+    private final int width, height;
+    private final int[] pixels;
+    private final int[] gradient;
+    private final double barWidth;
+    private final double[] columnMagnitude;
+    private final int[] columnHeight, columnColor;
+
+    /**
+     * @param gradient ARGB color of a bar by its magnitude, from 0 to the amplitude max, see {@link #makeGradient}
+     * @param barWidth part of its slot a bar fills, 1 for no gap between bars
+     */
+    BarRaster(int width, int height, int[] gradient, double barWidth)
+    {
+        this.width = width;
+        this.height = height;
+        this.gradient = gradient;
+        this.barWidth = barWidth;
+        pixels = new int[width * height];
+        columnMagnitude = new double[width];
+        columnHeight = new int[width];
+        columnColor = new int[width];
+    }
+
+    /**
+     * ARGB lookup table interpolating from one color to the other, with more of the second color early on
+     */
+    static int[] makeGradient(Color from, Color to, int size)
+    {
+        var gradient = new int[size];
+        for (int i = 0; i < size; i++) {
+            var color = (to != null ? from.interpolate(to, Math.pow((double) i/(size-1), 1.0/3)) : from);
+            gradient[i] = argb(color);
+        }
+        return gradient;
+    }
+
+    static int argb(Color color)
+    {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+            | (int) Math.round(color.getRed() * 255) << 16
+            | (int) Math.round(color.getGreen() * 255) << 8
+            | (int) Math.round(color.getBlue() * 255);
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * the pixels, row by row, transparent where there is no bar
+     */
+    int[] getPixels()
+    {
+        return pixels;
+    }
+
+    /**
+     * draw the bars of all channels, replacing the previous contents
+     */
+    void draw(double[] magnitudes, int channels, double amplitudeMax)
+    {
+        int bars = magnitudes.length / channels;
+        int stripHeight = height / channels;
+        for (int c = 0; c < channels; c++) {
+            // highest bar of every column
+            Arrays.fill(columnMagnitude, -1);
+            for (int b = 0; b < bars; b++) {
+                int first = (int) ((long) b * width / bars);
+                int end = (int) ((long) (b+1) * width / bars);
+                end = first + Math.max(1, (int) ((end - first) * barWidth));
+                double magnitude = magnitudes[c * bars + b];
+                for (int x = first; x < Math.min(end, width); x++) columnMagnitude[x] = Math.max(columnMagnitude[x], magnitude);
+            }
+            for (int x = 0; x < width; x++) {
+                double magnitude = columnMagnitude[x];
+                int color = (int) (magnitude/amplitudeMax * (gradient.length-1));
+                columnColor[x] = gradient[Math.max(0, Math.min(gradient.length-1, color))];
+                // the lowest row of a strip stays empty, so strips are separated
+                columnHeight[x] = (magnitude < 0 ? 0 : (int) Math.min(stripHeight - 1, magnitude / amplitudeMax * stripHeight));
+            }
+
+            // a pixel is set if its bar reaches up to its row, counted from the row above the bottom of the strip
+            for (int y = 0; y < stripHeight; y++) {
+                int row = (c * stripHeight + y) * width;
+                int level = stripHeight - 1 - y;
+                for (int x = 0; x < width; x++) {
+                    pixels[row + x] = (level > 0 && columnHeight[x] >= level ? columnColor[x] : 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package jockey;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * headless extraction of summary features from every audio file of a directory, e.g. for nightly quality checks
+ * files are analysed concurrently, one file per worker thread, and every file is streamed in blocks, so at most
+ * as many files as there are threads have buffers in memory. the directory is only handed to the workers as fast
+ * as they finish files, so the number of files waiting does not grow with the size of the directory either
+ *
+ * every file is cut into frames and transformed as for the display, and its features are computed from the
+ * average spectrum of all frames. a CSV line is written as soon as a file is finished, in the order files finish:
+ * <pre>
+ * file, seconds, rms, centroid (Hz), peak (Hz), energy of every band
+ * </pre>
+ * the bands are the bars of {@link SpectrumVisualizer#makeFrequencyBins} for the reference sample rate, so all files
+ * have the same columns; the energy of a band is the summed power of its FFT bins, averaged over the frames
+ * @author jockey
+ */
+public class BatchFeatures
+{
+    private static final int FRAMES_PER_BLOCK = 4096;
+
+    private final int fftSize;
+    private final int hopSize;
+    private final WindowFunction window;
+    private final float frequencyMax;
+    private final double[] bands; // starting frequency of every band
+    private final int threads;
+
+    /**
+     * @param referenceSampleRate sample rate the bands are computed for, as the bars of a file at that rate
+     */
+    public BatchFeatures(
+        int fftSize, int hopSize, WindowFunction window,
+        float frequencyMax, boolean octaveScale, double octave, float referenceSampleRate,
+        int threads
+    )
+    {
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.frequencyMax = frequencyMax;
+        this.bands = SpectrumVisualizer.makeFrequencyBins(frequencyMax, referenceSampleRate / fftSize, octaveScale, octave);
+        this.threads = threads;
+    }
+
+    /**
+     * starting frequency of every band, one column of the output each
+     */
+    public double[] getBands()
+    {
+        return bands;
+    }
+
+    /**
+     * analyse every .wav file of the directory and write one CSV line per file to the output
+     * files that cannot be read are reported on stderr and skipped
+     * @return the number of files analysed
+     */
+    public int run(File directory, File outputFile) throws IOException, InterruptedException
+    {
+        var files = directory.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".wav"));
+        if (files == null) throw new IOException("not a directory: " + directory);
+        Arrays.sort(files);
+
+        try (var out = Files.newBufferedWriter(outputFile.toPath(), StandardCharsets.UTF_8)) {
+            writeHeader(out);
+            var pool = Executors.newFixedThreadPool(threads);
+            try {
+                return run(files, out, pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private int run(File[] files, BufferedWriter out, ExecutorService pool) throws IOException, InterruptedException
+    {
+        // a file is only submitted when a worker is free, which bounds the files in memory and in the queue
+        var free = new Semaphore(threads);
+        var analysed = new AtomicInteger();
+        for (var file : files) {
+            free.acquire();
+            pool.execute(() -> {
+                try {
+                    var line = analyse(file);
+                    synchronized (out) {
+                        out.write(line);
+                        out.flush(); // results are visible as soon as a file is done
+                    }
+                    analysed.incrementAndGet();
+                } catch (UnsupportedAudioFileException | IOException | RuntimeException ex) { // e.g. a broken file
+                    System.err.println("skipping " + file + ": " + ex);
+                } finally {
+                    free.release();
+                }
+            });
+        }
+        free.acquire(threads); // all files done
+        return analysed.get();
+    }
+
+    private void writeHeader(Writer out) throws IOException
+    {
+        var header = new StringBuilder("file,seconds,rms,centroid,peak");
+        for (double band : bands) header.append(String.format(Locale.ROOT, ",band_%.1f", band));
+        out.write(header.append('\n').toString());
+    }
+
+    /**
+     * features of one file as a CSV line
+     */
+    String analyse(File file) throws IOException, UnsupportedAudioFileException
+    {
+        try (var source = AudioSource.open(file)) {
+            float sampleRate = source.getFormat().getSampleRate();
+            var stft = new ShortTimeFourierTransform(fftSize, hopSize, window);
+            var workspace = new SpectrumVisualizer.Workspace(fftSize);
+            var samples = new double[FRAMES_PER_BLOCK];
+            int bins = fftSize / 2 + 1;
+            var magnitude = new double[bins]; // summed over all frames
+            var power = new double[bins];
+
+            long totalSamples = 0, frames = 0;
+            double sumSquares = 0;
+            int n;
+            while ((n = source.read(null, samples, 0, samples.length)) != -1) {
+                for (int i = 0; i < n; i++) sumSquares += samples[i] * samples[i];
+                totalSamples += n;
+
+                int offset = 0;
+                while (offset < n) {
+                    offset += stft.write(samples, offset, n - offset);
+                    if (!stft.hasFrame()) continue;
+                    SpectrumVisualizer.transform(workspace, stft.takeFrame());
+                    for (int k = 0; k < bins; k++) {
+                        double p = workspace.re[k]*workspace.re[k] + workspace.im[k]*workspace.im[k];
+                        power[k] += p;
+                        magnitude[k] += Math.sqrt(p);
+                    }
+                    frames++;
+                }
+            }
+
+            // features of the average spectrum, bin 0 (the DC offset) is left out
+            double step = sampleRate / fftSize;
+            double weighted = 0, total = 0;
+            int peak = 1;
+            var energy = new double[bands.length];
+            int band = 0;
+            for (int k = 1; k < bins; k++) {
+                double f = k * step;
+                weighted += f * magnitude[k];
+                total += magnitude[k];
+                if (magnitude[k] > magnitude[peak]) peak = k;
+
+                // every bin goes into the last band starting at or below its frequency, as with the bars
+                while (band < bands.length-1 && f >= bands[band+1]) band++;
+                if (f >= bands[0] && f <= frequencyMax) energy[band] += power[k];
+            }
+
+            var line = new StringBuilder(csv(file.getName()));
+            line.append(String.format(Locale.ROOT, ",%.3f,%.3f,%.1f,%.1f",
+                totalSamples / sampleRate,
+                totalSamples > 0 ? Math.sqrt(sumSquares / totalSamples) : 0,
+                total > 0 ? weighted / total : 0,
+                frames > 0 && bins > 1 ? peak * step : 0));
+            for (double e : energy) line.append(String.format(Locale.ROOT, ",%.6g", frames > 0 ? e / frames : 0));
+            return line.append('\n').toString();
+        }
+    }
+
+    /**
+     * quote a CSV field if needed
+     */
+    private static String csv(String field)
+    {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 2) {
+            System.err.println("usage: features <directory> <output.csv> [--fft n] [--hop n] [--window hann|hamming|blackman_harris|rectangular]");
+            System.err.println("       [--frequency-max f] [--octave-parts n] [--sample-rate f] [--threads n]");
+            System.exit(1);
+        }
+        int fftSize = 2048, hopSize = 1024, octaveParts = 1, threads = Runtime.getRuntime().availableProcessors();
+        var window = WindowFunction.HANN;
+        float frequencyMax = 16000, sampleRate = 44100;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fft": fftSize = Integer.parseInt(args[++i]); break;
+                case "--hop": hopSize = Integer.parseInt(args[++i]); break;
+                case "--window": window = WindowFunction.valueOf(args[++i].toUpperCase()); break;
+                case "--frequency-max": frequencyMax = Float.parseFloat(args[++i]); break;
+                case "--octave-parts": octaveParts = Integer.parseInt(args[++i]); break;
+                case "--sample-rate": sampleRate = Float.parseFloat(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        var features = new BatchFeatures(
+            fftSize, hopSize, window,
+            frequencyMax, octaveParts > 0, 1.0/octaveParts, sampleRate,
+            threads
+        );
+
+        long start = System.nanoTime();
+        int files = features.run(new File(args[0]), new File(args[1]));
+        System.out.printf("%d files in %.2f s%n", files, (System.nanoTime() - start) / 1e9);
+    }
+}
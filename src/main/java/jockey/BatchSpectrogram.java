@@ -0,0 +1,316 @@
+package jockey;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * headless analysis of a whole audio file into a spectrogram, without playing it
+ * the file is read in blocks of frames, the frames of each block are analysed in parallel on a fork-join pool,
+ * so memory use only depends on the block size and not on the length of the file
+ *
+ * binary output format (big endian):
+ * <pre>
+ * int    magic 'SPEC'
+ * int    version
+ * float  sample rate
+ * int    fft size
+ * int    hop size
+ * int    number of bars
+ * long   number of frames
+ * float  starting frequency of every bar
+ * float  magnitude of every bar, frame by frame
+ * </pre>
+ * @author jockey
+ */
+public class BatchSpectrogram
+{
+    public static final int MAGIC = 0x53504543; // "SPEC"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4 + 8;
+
+    private static final int FRAMES_PER_BLOCK = 1024;
+    private static final int FRAMES_PER_TASK = 16;
+
+    private static final int SPECTRUM_RGB = 0x0000ff;
+    private static final int SPECTRUM_GRADIENT_RGB = 0xff7f50;
+
+    private final int fftSize;
+    private final int hopSize;
+    private final WindowFunction window;
+    private final float frequencyMax; // 0 means up to the nyquist frequency
+    private final boolean octaveScale;
+    private final double octave;
+    private final boolean decibelScale;
+    private final double amplitudeMax;
+    private final boolean singlePrecision;
+    private final int threads;
+    private final File pngFile; // null for no image
+    private final int pngWidth;
+
+    public BatchSpectrogram(
+        int fftSize, int hopSize, WindowFunction window,
+        float frequencyMax, boolean octaveScale, double octave,
+        boolean decibelScale, double amplitudeMax, boolean singlePrecision,
+        int threads, File pngFile, int pngWidth
+    )
+    {
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.frequencyMax = frequencyMax;
+        this.octaveScale = octaveScale;
+        this.octave = octave;
+        this.decibelScale = decibelScale;
+        this.amplitudeMax = amplitudeMax;
+        this.singlePrecision = singlePrecision;
+        this.threads = threads;
+        this.pngFile = pngFile;
+        this.pngWidth = pngWidth;
+    }
+
+    /**
+     * analyse the whole audio file and write the spectrogram to the output file
+     * @return the number of frames written
+     */
+    public long run(File audioFile, File outputFile) throws IOException, UnsupportedAudioFileException
+    {
+        try (var source = AudioSource.open(audioFile);
+             var out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var pool = new ForkJoinPool(threads);
+            try {
+                return run(source, out, pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private long run(AudioSource source, FileChannel out, ForkJoinPool pool) throws IOException
+    {
+        var format = source.getFormat();
+        float sampleRate = format.getSampleRate();
+        float fMax = (frequencyMax > 0 ? frequencyMax : sampleRate / 2);
+        var binMap = FrequencyBinMap.of(sampleRate, fftSize, fMax, octaveScale, octave, false);
+        int bars = binMap.getBars();
+
+        long totalFrames = (source.getFrameLength() < fftSize ? 0 : (source.getFrameLength() - fftSize) / hopSize + 1);
+        var png = (pngFile != null && totalFrames > 0 ? new float[(int) Math.min(pngWidth, totalFrames)][bars] : null);
+
+        // header, the number of frames is filled in at the end
+        var header = ByteBuffer.allocate(HEADER_SIZE + 4 * bars);
+        header.putInt(MAGIC).putInt(VERSION).putFloat(sampleRate)
+            .putInt(fftSize).putInt(hopSize).putInt(bars).putLong(0);
+        for (double f : binMap.getFrequencies()) header.putFloat((float) f);
+        header.flip();
+        while (header.hasRemaining()) out.write(header);
+
+        // a block holds FRAMES_PER_BLOCK frames, consecutive blocks overlap by fftSize - hopSize samples
+        int blockSamples = (FRAMES_PER_BLOCK - 1) * hopSize + fftSize;
+        var samples = new double[blockSamples];
+        var rows = new float[FRAMES_PER_BLOCK][bars];
+        var rowBuffer = ByteBuffer.allocate(FRAMES_PER_BLOCK * bars * 4);
+
+        int filled = 0;
+        long frame = 0;
+        boolean eof = false;
+        while (!eof) {
+            // top up the block
+            while (filled < blockSamples) {
+                int n = source.read(null, samples, filled, blockSamples - filled);
+                if (n == -1) { eof = true; break; }
+                filled += n;
+            }
+
+            int frames = (filled < fftSize ? 0 : (filled - fftSize) / hopSize + 1);
+            if (frames == 0) break;
+
+            pool.invoke(new FrameRange(samples, rows, 0, frames, binMap));
+
+            rowBuffer.clear();
+            for (int f = 0; f < frames; f++) {
+                for (int b = 0; b < bars; b++) rowBuffer.putFloat(rows[f][b]);
+                if (png != null) accumulate(png, rows[f], frame + f, totalFrames);
+            }
+            rowBuffer.flip();
+            while (rowBuffer.hasRemaining()) out.write(rowBuffer);
+            frame += frames;
+
+            // keep the samples still needed by the next frame
+            int consumed = frames * hopSize;
+            filled -= consumed;
+            System.arraycopy(samples, consumed, samples, 0, filled);
+        }
+
+        out.write(ByteBuffer.allocate(8).putLong(0, frame), HEADER_SIZE - 8);
+
+        if (png != null) writePng(png);
+        return frame;
+    }
+
+    /**
+     * a range of frames of the current block, split until it is small enough to be computed directly
+     */
+    private class FrameRange extends RecursiveAction
+    {
+        private final double[] samples;
+        private final float[][] rows;
+        private final int from, to;
+        private final FrequencyBinMap binMap;
+
+        FrameRange(double[] samples, float[][] rows, int from, int to, FrequencyBinMap binMap)
+        {
+            this.samples = samples;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.binMap = binMap;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > FRAMES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new FrameRange(samples, rows, from, mid, binMap),
+                    new FrameRange(samples, rows, mid, to, binMap)
+                );
+                return;
+            }
+
+            var w = window.coefficients(fftSize);
+            var magnitudes = new double[binMap.getBars()];
+            if (singlePrecision) {
+                computeFloat(w, magnitudes);
+                return;
+            }
+
+            var x = new double[fftSize];
+            var workspace = new SpectrumVisualizer.Workspace(fftSize);
+            for (int f = from; f < to; f++) {
+                int start = f * hopSize;
+                for (int i = 0; i < fftSize; i++) x[i] = samples[start + i] * w[i];
+
+                SpectrumVisualizer.getSpectrum(
+                    workspace, x, binMap,
+                    decibelScale, amplitudeMax,
+                    magnitudes
+                );
+                for (int b = 0; b < magnitudes.length; b++) rows[f][b] = (float) magnitudes[b];
+            }
+        }
+
+        /**
+         * same as compute, with the FFT in single precision
+         */
+        private void computeFloat(double[] w, double[] magnitudes)
+        {
+            var x = new float[fftSize];
+            var workspace = new SpectrumVisualizer.FloatWorkspace(fftSize);
+            for (int f = from; f < to; f++) {
+                int start = f * hopSize;
+                for (int i = 0; i < fftSize; i++) x[i] = (float) (samples[start + i] * w[i]);
+
+                SpectrumVisualizer.getSpectrum(
+                    workspace, x, binMap,
+                    decibelScale, amplitudeMax,
+                    magnitudes
+                );
+                for (int b = 0; b < magnitudes.length; b++) rows[f][b] = (float) magnitudes[b];
+            }
+        }
+    }
+
+    /**
+     * reduce a frame into its image column, keeping the loudest value per bar
+     */
+    private static void accumulate(float[][] png, float[] row, long frame, long totalFrames)
+    {
+        int column = (int) Math.min(png.length - 1, frame * png.length / totalFrames);
+        for (int b = 0; b < row.length; b++) {
+            if (row[b] > png[column][b]) png[column][b] = row[b];
+        }
+    }
+
+    private void writePng(float[][] png) throws IOException
+    {
+        int width = png.length, height = png[0].length;
+        double max = (decibelScale ? 20 * Math.log10(amplitudeMax) : amplitudeMax);
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int b = 0; b < height; b++) {
+                double t = Math.min(1, Math.max(0, png[x][b] / max));
+                image.setRGB(x, height-1 - b, gradient(Math.pow(t, 1.0/3)));
+            }
+        }
+        ImageIO.write(image, "png", pngFile);
+    }
+
+    /**
+     * black for silence, fading to the spectrum color and then to the gradient color
+     */
+    private static int gradient(double t)
+    {
+        return (t < 0.5 ? interpolate(0, SPECTRUM_RGB, 2*t) : interpolate(SPECTRUM_RGB, SPECTRUM_GRADIENT_RGB, 2*t - 1));
+    }
+
+    private static int interpolate(int from, int to, double t)
+    {
+        int rgb = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int a = (from >> shift) & 0xff, b = (to >> shift) & 0xff;
+            rgb |= ((int) Math.round(a + (b - a) * t)) << shift;
+        }
+        return rgb;
+    }
+
+    public static void main(String[] args) throws IOException, UnsupportedAudioFileException
+    {
+        if (args.length < 2) {
+            System.err.println("usage: batch <input.wav> <output.spec> [--fft n] [--hop n] [--window hann|hamming|blackman_harris|rectangular]");
+            System.err.println("       [--frequency-max f] [--octave-parts n] [--decibel] [--amplitude-max a] [--float] [--threads n] [--png file] [--png-width n]");
+            System.exit(1);
+        }
+        int fftSize = 2048, hopSize = 512, octaveParts = 0, threads = Runtime.getRuntime().availableProcessors(), pngWidth = 1920;
+        var window = WindowFunction.HANN;
+        float frequencyMax = 0;
+        boolean decibelScale = false, singlePrecision = false;
+        double amplitudeMax = 5e6;
+        File pngFile = null;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fft": fftSize = Integer.parseInt(args[++i]); break;
+                case "--hop": hopSize = Integer.parseInt(args[++i]); break;
+                case "--window": window = WindowFunction.valueOf(args[++i].toUpperCase()); break;
+                case "--frequency-max": frequencyMax = Float.parseFloat(args[++i]); break;
+                case "--octave-parts": octaveParts = Integer.parseInt(args[++i]); break;
+                case "--decibel": decibelScale = true; break;
+                case "--amplitude-max": amplitudeMax = Double.parseDouble(args[++i]); break;
+                case "--float": singlePrecision = true; break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--png": pngFile = new File(args[++i]); break;
+                case "--png-width": pngWidth = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        var batch = new BatchSpectrogram(
+            fftSize, hopSize, window,
+            frequencyMax, octaveParts > 0, 1.0/octaveParts,
+            decibelScale, amplitudeMax, singlePrecision,
+            threads, pngFile, pngWidth
+        );
+
+        long start = System.nanoTime();
+        long frames = batch.run(new File(args[0]), new File(args[1]));
+        System.out.printf("%d frames in %.2f s%n", frames, (System.nanoTime() - start) / 1e9);
+    }
+}
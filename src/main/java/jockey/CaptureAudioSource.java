@@ -0,0 +1,197 @@
+package jockey;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * live input captured on a dedicated thread
+ * the capture thread does nothing but drain the line into a ring buffer, so a slow analysis frame cannot make the
+ * line overrun, and the analysis reads from the ring on its own schedule. the ring has a single writer and a single
+ * reader, which only communicate through the two positions, so neither ever waits for a lock.
+ * if the analysis falls behind by more than the ring holds, newly captured frames are dropped and counted as overruns
+ * @author jockey
+ */
+public class CaptureAudioSource implements AudioSource
+{
+    private final TargetDataLine line;
+    private final AudioFormat format;
+    private final PcmDecoder decoder;
+    private final int frameSize;
+    private final byte[] ring;
+    private final AtomicLong written = new AtomicLong(); // bytes, only advanced by the capture thread
+    private final AtomicLong taken = new AtomicLong(); // bytes, only advanced by the reader
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong lineOverruns = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean capturing;
+    private volatile Thread reader;
+    private byte[] buffer = new byte[0]; // used if the caller does not need the raw bytes
+
+    /**
+     * open the line and start capturing
+     * @param lineBufferSize size of the line's own buffer in bytes, a few milliseconds are enough with the ring behind it
+     * @param ringFrames number of frames the analysis may fall behind before input is dropped
+     */
+    public CaptureAudioSource(TargetDataLine line, AudioFormat format, int lineBufferSize, int ringFrames) throws LineUnavailableException
+    {
+        this.line = line;
+        this.format = format;
+        this.decoder = new PcmDecoder(format);
+        this.frameSize = decoder.getFrameSize();
+        ring = new byte[ringFrames * frameSize];
+
+        line.open(format, lineBufferSize);
+        line.start();
+        capturing = true;
+        thread = new Thread(this::capture, "audio-capture");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * capture from the default input line, with one second of ring buffer
+     */
+    public static CaptureAudioSource open(AudioFormat format, int lineBufferSize) throws LineUnavailableException
+    {
+        return new CaptureAudioSource(AudioSystem.getTargetDataLine(format), format, lineBufferSize, (int) format.getFrameRate());
+    }
+
+    private void capture()
+    {
+        // reads of a quarter of the line buffer keep the line at most a quarter full while the ring has room
+        int chunkFrames = Math.max(1, Math.min(ring.length, line.getBufferSize()) / frameSize / 4);
+        var chunk = new byte[chunkFrames * frameSize];
+        try {
+            while (capturing) {
+                if (line.available() >= line.getBufferSize()) lineOverruns.incrementAndGet(); // the line may have lost input
+                int n = line.read(chunk, 0, chunk.length) / frameSize * frameSize;
+                if (n == 0) {
+                    if (!line.isOpen() || !line.isRunning()) break; // stopped or closed
+                    continue;
+                }
+
+                long end = written.get();
+                int free = ring.length - (int) (end - taken.get());
+                int keep = Math.min(n, free);
+                if (keep < n) overruns.addAndGet((n - keep) / frameSize);
+
+                int position = (int) (end % ring.length);
+                int first = Math.min(keep, ring.length - position);
+                System.arraycopy(chunk, 0, ring, position, first);
+                System.arraycopy(chunk, first, ring, 0, keep - first);
+                written.set(end + keep); // volatile write, publishes the bytes to the reader
+                LockSupport.unpark(reader);
+            }
+        } finally {
+            capturing = false;
+            LockSupport.unpark(reader);
+        }
+    }
+
+    /**
+     * frames dropped because the ring was full
+     */
+    public long getOverruns()
+    {
+        return overruns.get();
+    }
+
+    /**
+     * number of times the line's buffer was found full, so the line itself may have dropped input
+     */
+    public long getLineOverruns()
+    {
+        return lineOverruns.get();
+    }
+
+    /**
+     * frames captured but not read yet
+     */
+    public int getBuffered()
+    {
+        return (int) (written.get() - taken.get()) / frameSize;
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    @Override
+    public long getFrameLength()
+    {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    /**
+     * waits until the requested frames have been captured, returns fewer only once capturing has stopped
+     */
+    @Override
+    public int read(byte[] bytes, double[] samples, int offset, int frames) throws IOException
+    {
+        if (bytes == null) bytes = buffer(frames);
+        int framesRead = take(bytes, frames);
+        if (framesRead > 0) decoder.decode(bytes, framesRead, samples, offset);
+        return framesRead;
+    }
+
+    @Override
+    public int readChannels(byte[] bytes, double[][] samples, int offset, int frames) throws IOException
+    {
+        if (bytes == null) bytes = buffer(frames);
+        int framesRead = take(bytes, frames);
+        if (framesRead > 0) decoder.decodeChannels(bytes, framesRead, samples, offset);
+        return framesRead;
+    }
+
+    /**
+     * internal buffer for callers that do not need the raw bytes
+     */
+    private byte[] buffer(int frames)
+    {
+        if (buffer.length < frames * frameSize) buffer = new byte[frames * frameSize];
+        return buffer;
+    }
+
+    private int take(byte[] bytes, int frames) throws IOException
+    {
+        reader = Thread.currentThread();
+        long start = taken.get();
+        int wanted = Math.min(frames * frameSize, ring.length);
+        while (written.get() - start < wanted && capturing) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10)); // woken by the capture thread
+            if (Thread.currentThread().isInterrupted()) throw new IOException("interrupted while waiting for input");
+        }
+
+        int n = (int) Math.min(wanted, written.get() - start);
+        if (n == 0) return -1; // capturing has stopped and everything was read
+        int position = (int) (start % ring.length);
+        int first = Math.min(n, ring.length - position);
+        System.arraycopy(ring, position, bytes, 0, first);
+        System.arraycopy(ring, 0, bytes, first, n - first);
+        taken.set(start + n); // volatile write, frees the bytes for the capture thread
+        return n / frameSize;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        capturing = false;
+        line.stop();
+        line.close();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
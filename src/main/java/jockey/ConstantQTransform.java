@@ -0,0 +1,178 @@
+package jockey;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * constant-Q transform, an alternative to the FFT for octave scale spectra
+ * every bar is analysed over its own number of samples, long for the low bars and short for the high ones, so all bars
+ * have the same frequency resolution relative to their frequency (the same Q) and the low octaves are resolved as well
+ * as the high ones, instead of sharing one or two FFT bins
+ *
+ * the transform follows Brown and Puckette: the windowed complex exponential of every bar (the temporal kernel) is
+ * transformed once, and only its few significant FFT bins are kept as a row of a sparse matrix. the transform of a
+ * frame is then one real FFT of the longest kernel length plus a multiplication of the sparse matrix with the result
+ *
+ * kernels only depend on their parameters, so they are cached and shared, see {@link #of}
+ * @author jockey
+ */
+public class ConstantQTransform
+{
+    /**
+     * lowest frequency analysed, unless the kernel for it would be longer than {@link #MAX_FFT_SIZE}
+     */
+    public static final double MIN_FREQUENCY = 20;
+    public static final int MAX_FFT_SIZE = 1 << 16;
+    private static final double THRESHOLD = 0.005; // smallest kept kernel bin, relative to the largest of its row
+    private static final Map<List<Object>, ConstantQTransform> CACHE = new ConcurrentHashMap<>();
+
+    private final int fftSize;
+    private final double[] frequencies;
+
+    // the kernels as compressed sparse rows: row b holds entries rowStart[b] to rowStart[b+1]-1
+    private final int[] rowStart;
+    private final int[] column;
+    private final double[] kernelRe, kernelIm;
+
+    private ConstantQTransform(float sampleRate, float frequencyMax, double octave)
+    {
+        // every bar is one octave part wide, the window of a bar is as long as it takes to resolve it from its neighbours
+        double q = 1 / (Math.pow(2, octave) - 1);
+        double lowest = Math.max(MIN_FREQUENCY, q * sampleRate / MAX_FFT_SIZE);
+        int bars = Math.max(1, (int) Math.floor(Math.log(frequencyMax / lowest) / Math.log(2) / octave));
+
+        // bars start at the same frequencies as those of makeFrequencyBins, counted down from the frequency max
+        frequencies = new double[bars];
+        for (int b = 0; b < bars; b++) frequencies[b] = frequencyMax / Math.pow(2, (bars - b) * octave);
+
+        int longest = Math.min(MAX_FFT_SIZE, (int) Math.ceil(q * sampleRate / center(0, octave)));
+        fftSize = Math.max(2, Integer.highestOneBit(longest - 1) << 1);
+        var fft = FFT.forSize(fftSize);
+
+        // the rows are collected in temporary arrays that grow as needed
+        rowStart = new int[bars + 1];
+        var columns = new int[16 * bars];
+        var res = new double[16 * bars];
+        var ims = new double[16 * bars];
+        var re = new double[fftSize];
+        var im = new double[fftSize];
+        int entries = 0;
+        for (int b = 0; b < bars; b++) {
+            // Hann windowed complex exponential at the center of the bar, centered in the frame and scaled so that
+            // a sine of amplitude a at that frequency gives a/2
+            double frequency = center(b, octave);
+            int length = Math.min(fftSize, (int) Math.ceil(q * sampleRate / frequency));
+            int start = (fftSize - length) / 2;
+            Arrays.fill(re, 0);
+            Arrays.fill(im, 0);
+            for (int n = 0; n < length; n++) {
+                double w = (1 - Math.cos(2*Math.PI * n/length)) / length; // Hann window scaled to sum to 1
+                double t = 2*Math.PI * frequency * n / sampleRate;
+                re[start + n] = w * Math.cos(t);
+                im[start + n] = w * Math.sin(t);
+            }
+            fft.transform(re, im);
+
+            // by Parseval, the product with the frame is that of the transforms divided by the size
+            // the kernel is concentrated at positive frequencies, which is all a real FFT produces
+            double max = 0;
+            for (int j = 0; j <= fftSize / 2; j++) max = Math.max(max, Math.hypot(re[j], im[j]));
+            for (int j = 0; j <= fftSize / 2; j++) {
+                if (Math.hypot(re[j], im[j]) < THRESHOLD * max) continue;
+                if (entries == columns.length) {
+                    columns = Arrays.copyOf(columns, 2 * entries);
+                    res = Arrays.copyOf(res, 2 * entries);
+                    ims = Arrays.copyOf(ims, 2 * entries);
+                }
+                columns[entries] = j;
+                res[entries] = re[j] / fftSize;
+                ims[entries] = -im[j] / fftSize; // conjugate
+                entries++;
+            }
+            rowStart[b+1] = entries;
+        }
+        column = Arrays.copyOf(columns, entries);
+        kernelRe = Arrays.copyOf(res, entries);
+        kernelIm = Arrays.copyOf(ims, entries);
+    }
+
+    /**
+     * center frequency of bar b, halfway between its start and the start of the next bar on a logarithmic scale
+     */
+    private double center(int b, double octave)
+    {
+        return frequencies[b] * Math.pow(2, octave / 2);
+    }
+
+    /**
+     * get the (cached) transform for the given sample rate, frequency max and octave part
+     */
+    public static ConstantQTransform of(float sampleRate, float frequencyMax, double octave)
+    {
+        return CACHE.computeIfAbsent(List.of(sampleRate, frequencyMax, octave), k -> new ConstantQTransform(sampleRate, frequencyMax, octave));
+    }
+
+    /**
+     * length of the frames to transform, the length of the longest kernel rounded up to a power of two
+     * frames must not be windowed, the kernels contain the window
+     */
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+
+    public int getBars()
+    {
+        return frequencies.length;
+    }
+
+    /**
+     * starting frequency of every bar
+     */
+    public double[] getFrequencies()
+    {
+        return frequencies;
+    }
+
+    /**
+     * number of stored kernel entries, the number of complex multiplications per frame after the FFT
+     */
+    public int getKernelSize()
+    {
+        return column.length;
+    }
+
+    /**
+     * the constant-Q spectrum of the frame, computed in the given workspace
+     * a sine of amplitude a at the center of a bar gives a magnitude of a/2 * gain, e.g. a gain of N/2 gives the same
+     * magnitudes as the peak of a Hann windowed FFT of size N
+     * @param ws workspace of size {@link #getFftSize()}
+     */
+    public void getSpectrum(SpectrumVisualizer.Workspace ws, double[] x, double gain, boolean scaleAmplitude, double amplitudeMax, double[] magnitudes)
+    {
+        SpectrumVisualizer.transform(ws, x);
+        binSpectrum(ws, gain, scaleAmplitude, amplitudeMax, magnitudes);
+    }
+
+    /**
+     * second half of getSpectrum: multiply the FFT in the workspace with the kernels
+     */
+    public void binSpectrum(SpectrumVisualizer.Workspace ws, double gain, boolean scaleAmplitude, double amplitudeMax, double[] magnitudes)
+    {
+        var re = ws.re;
+        var im = ws.im;
+        double offset = 20 * Math.log10(amplitudeMax);
+        for (int b = 0; b < frequencies.length; b++) {
+            double sumRe = 0, sumIm = 0;
+            for (int p = rowStart[b]; p < rowStart[b+1]; p++) {
+                int j = column[p];
+                sumRe += re[j]*kernelRe[p] - im[j]*kernelIm[p];
+                sumIm += re[j]*kernelIm[p] + im[j]*kernelRe[p];
+            }
+            double magnitude = Math.sqrt(sumRe*sumRe + sumIm*sumIm) * gain;
+            magnitudes[b] = (scaleAmplitude ? SpectrumVisualizer.decibel(magnitude, amplitudeMax, offset) : magnitude);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package jockey;
+
+import java.util.Arrays;
+
+/**
+ * streaming reduction of the sample rate by a power of two, for spectra that only go up to a fraction of the nyquist
+ * frequency. a frame of fftSize/factor samples at the reduced rate has the same frequency resolution as one of
+ * fftSize samples at the full rate, so the FFT shrinks by the factor
+ *
+ * every halving is a half-band FIR filter (Kaiser windowed sinc) followed by dropping every other sample; half the
+ * taps of a half-band filter are zero and the others are symmetric, so a stage costs 7 multiplications per input
+ * sample. a stage passes up to 0.4 of its output rate and attenuates everything that would alias into that band by
+ * about 80 dB. every stage has a gain of 2, so spectra of the shorter frames have the same magnitudes as before
+ * @author jockey
+ */
+public class Decimator
+{
+    private static final int HALF_LENGTH = 27; // taps on either side of the center
+    private static final double KAISER_BETA = 8;
+    private static final double PASSBAND = 0.4; // highest frequency kept, relative to the output sample rate
+    private static final int MIN_FFT_SIZE = 32;
+    private static final double[] TAPS = design(); // odd taps right of the center, the center tap is 1
+
+    private final int factor;
+    private final Stage[] stages;
+    private final double[][] buffers; // output of every stage but the last
+
+    /**
+     * @param factor power of two to reduce the sample rate by
+     * @param maxBlock the largest number of samples passed to {@link #process} at once
+     */
+    public Decimator(int factor, int maxBlock)
+    {
+        if (factor < 1 || Integer.bitCount(factor) != 1)
+            throw new IllegalArgumentException("decimation factor must be a power of two, got " + factor);
+        this.factor = factor;
+        int count = Integer.numberOfTrailingZeros(factor);
+        stages = new Stage[count];
+        buffers = new double[Math.max(0, count - 1)][];
+        for (int s = 0; s < count; s++) {
+            stages[s] = new Stage();
+            if (s < count - 1) buffers[s] = new double[(maxBlock >> (s+1)) + 1];
+        }
+    }
+
+    /**
+     * the largest factor that keeps frequencies up to frequencyMax free of aliasing and divides the FFT and hop size,
+     * so frames are still cut at the same positions of the input
+     */
+    public static int factor(float sampleRate, float frequencyMax, int fftSize, int hopSize)
+    {
+        int factor = 1;
+        while (fftSize % (2*factor) == 0 && hopSize % (2*factor) == 0 && fftSize / (2*factor) >= MIN_FFT_SIZE
+            && frequencyMax <= PASSBAND * sampleRate / (2*factor)) factor *= 2;
+        return factor;
+    }
+
+    public int getFactor()
+    {
+        return factor;
+    }
+
+    /**
+     * forget all samples, e.g. after jumping to another position of the audio
+     */
+    public void reset()
+    {
+        for (var stage : stages) stage.reset();
+    }
+
+    /**
+     * filter and decimate length samples from in, starting at offset, into out
+     * @return the number of samples written to out, every factor-th input sample gives one
+     */
+    public int process(double[] in, int offset, int length, double[] out)
+    {
+        if (stages.length == 0) {
+            System.arraycopy(in, offset, out, 0, length);
+            return length;
+        }
+        for (int s = 0; s < stages.length; s++) {
+            var target = (s == stages.length - 1 ? out : buffers[s]);
+            length = stages[s].process(in, offset, length, target);
+            in = target;
+            offset = 0;
+        }
+        return length;
+    }
+
+    /**
+     * Kaiser windowed sinc with its cutoff at a quarter of the input rate, scaled to a gain of 2
+     */
+    private static double[] design()
+    {
+        var taps = new double[(HALF_LENGTH + 1) / 2];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int k = 0; k < taps.length; k++) {
+            int j = 2*k + 1; // distance from the center, the even ones are zero
+            double sinc = Math.sin(Math.PI * j / 2) / (Math.PI * j / 2);
+            double r = (double) j / (HALF_LENGTH + 1);
+            double window = besselI0(KAISER_BETA * Math.sqrt(1 - r*r)) / i0Beta;
+            taps[k] = sinc * window; // 2 * (sinc/2 * window)
+        }
+
+        // normalise the gain at DC to 2 exactly: center 1 plus twice the sum of the taps
+        double sum = 0;
+        for (double t : taps) sum += 2*t;
+        for (int k = 0; k < taps.length; k++) taps[k] *= 1 / sum;
+        return taps;
+    }
+
+    /**
+     * modified Bessel function of the first kind and order 0, as a power series
+     */
+    private static double besselI0(double x)
+    {
+        double sum = 1, term = 1;
+        for (int k = 1; term > 1e-12 * sum; k++) {
+            term *= (x / (2*k)) * (x / (2*k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * one half-band filter and halving of the rate
+     */
+    private static class Stage
+    {
+        private static final int LENGTH = 2*HALF_LENGTH + 1;
+
+        // every sample is stored twice, at i and i+LENGTH, so the latest LENGTH samples are always contiguous
+        private final double[] history = new double[2 * LENGTH];
+        private int position;
+        private boolean odd; // whether the next input sample completes a pair
+
+        void reset()
+        {
+            Arrays.fill(history, 0);
+            position = 0;
+            odd = false;
+        }
+
+        int process(double[] in, int offset, int length, double[] out)
+        {
+            int produced = 0;
+            for (int i = 0; i < length; i++) {
+                double s = in[offset + i];
+                history[position] = s;
+                history[position + LENGTH] = s;
+                if (++position == LENGTH) position = 0;
+
+                odd = !odd;
+                if (odd) continue;
+
+                // oldest sample at position, newest at position+LENGTH-1, center in the middle
+                int center = position + HALF_LENGTH;
+                double sum = history[center];
+                for (int k = 0; k < TAPS.length; k++) {
+                    int j = 2*k + 1;
+                    sum += TAPS[k] * (history[center - j] + history[center + j]);
+                }
+                out[produced++] = sum;
+            }
+            return produced;
+        }
+    }
+}
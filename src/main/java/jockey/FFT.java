@@ -0,0 +1,526 @@
+package jockey;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FFT of any length, working in place on separate arrays of real and imaginary parts
+ * {@link #forSize(int)} plans the transform once per size and caches it:
+ * <ul>
+ * <li>powers of two use an in-place radix-4 algorithm (plus one radix-2 stage for odd powers),
+ *     which needs a quarter fewer complex multiplications than radix-2</li>
+ * <li>sizes with only small prime factors (e.g. 1764 = 4*9*49) use a self-sorting mixed radix algorithm</li>
+ * <li>all other sizes use Bluestein's algorithm, a convolution computed with a power of two FFT</li>
+ * </ul>
+ * plans are shared between threads, the working buffers of a thread are kept for its next transform
+ * @author jockey
+ */
+public abstract class FFT
+{
+    private static final Map<Integer, FFT> PLANS = new ConcurrentHashMap<>();
+    private static final int MAX_RADIX = 31; // larger prime factors are computed by Bluestein's algorithm
+
+    protected final int size;
+    private final ThreadLocal<double[][]> converted; // double precision copy for float transforms
+
+    private FFT(int size)
+    {
+        this.size = size;
+        converted = ThreadLocal.withInitial(() -> new double[2][size]);
+    }
+
+    /**
+     * get the (cached) transform for the given size
+     */
+    public static FFT forSize(int size)
+    {
+        if (size < 1) throw new IllegalArgumentException("FFT size must be positive, got " + size);
+        return PLANS.computeIfAbsent(size, FFT::plan);
+    }
+
+    private static FFT plan(int size)
+    {
+        if ((size & (size - 1)) == 0) return new PowerOfTwo(size);
+        var factors = MixedRadix.factorize(size);
+        if (factors[factors.length - 1] <= MAX_RADIX) return new MixedRadix(size, factors);
+        return new Bluestein(size);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * transform the signal given by re and im in place, both arrays have to be at least {@link #size()} long
+     */
+    public abstract void transform(double[] re, double[] im);
+
+    /**
+     * single precision version of {@link #transform(double[], double[])}
+     * powers of two are computed in single precision, with half the memory traffic at about 1e-7 relative error,
+     * other sizes are computed in double precision and rounded
+     */
+    public void transform(float[] re, float[] im)
+    {
+        var x = converted.get();
+        for (int i = 0; i < size; i++) {
+            x[0][i] = re[i];
+            x[1][i] = im[i];
+        }
+        transform(x[0], x[1]);
+        for (int i = 0; i < size; i++) {
+            re[i] = (float) x[0][i];
+            im[i] = (float) x[1][i];
+        }
+    }
+
+    /**
+     * powers of two: bit reversal followed by radix-4 butterflies
+     *
+     * after bit reversal, a block of 4h holds the transforms of size h of the samples 4m, 4m+2, 4m+1 and 4m+3
+     * (in that order), which one radix-4 butterfly per index k < h combines with three twiddle factors.
+     * the twiddle factors of every stage are stored one after another, so the butterfly loop of a stage
+     * reads all its arrays with stride 1 and can be vectorized by the JIT.
+     */
+    private static final class PowerOfTwo extends FFT
+    {
+        private final int[] reversed;
+        private final boolean radix2; // odd power of two, so one radix-2 stage comes first
+        // W^k, W^2k, W^3k with W = e^(-2*pi*i/(4h)), k < h, of the stage combining quarters of size h start at index h-1
+        private final double[] cos1, sin1, cos2, sin2, cos3, sin3;
+        private final float[] cos1f, sin1f, cos2f, sin2f, cos3f, sin3f;
+
+        PowerOfTwo(int size)
+        {
+            super(size);
+            int bits = Integer.numberOfTrailingZeros(size);
+            reversed = new int[size];
+            for (int i = 0; i < size; i++) {
+                reversed[i] = (bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits));
+            }
+            radix2 = (bits % 2 == 1);
+
+            int length = size / 2;
+            cos1 = new double[length]; sin1 = new double[length];
+            cos2 = new double[length]; sin2 = new double[length];
+            cos3 = new double[length]; sin3 = new double[length];
+            cos1f = new float[length]; sin1f = new float[length];
+            cos2f = new float[length]; sin2f = new float[length];
+            cos3f = new float[length]; sin3f = new float[length];
+            for (int h = (radix2 ? 2 : 4); 4*h <= size; h *= 4) {
+                for (int k = 0; k < h; k++) {
+                    int t = h-1 + k;
+                    double angle = -2*Math.PI * k / (4*h);
+                    cos1[t] = Math.cos(angle);   sin1[t] = Math.sin(angle);
+                    cos2[t] = Math.cos(2*angle); sin2[t] = Math.sin(2*angle);
+                    cos3[t] = Math.cos(3*angle); sin3[t] = Math.sin(3*angle);
+                    cos1f[t] = (float) cos1[t]; sin1f[t] = (float) sin1[t];
+                    cos2f[t] = (float) cos2[t]; sin2f[t] = (float) sin2[t];
+                    cos3f[t] = (float) cos3[t]; sin3f[t] = (float) sin3[t];
+                }
+            }
+        }
+
+        @Override
+        public void transform(double[] re, double[] im)
+        {
+            // reorder input so that the butterflies can be computed bottom up
+            for (int i = 0; i < size; i++) {
+                int j = reversed[i];
+                if (i < j) {
+                    double t = re[i]; re[i] = re[j]; re[j] = t;
+                    t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+            }
+
+            int h = 1;
+            if (radix2) {
+                // halves of size 1, the twiddle factor is 1
+                for (int a = 0; a + 1 < size; a += 2) {
+                    double tr = re[a+1], ti = im[a+1];
+                    re[a+1] = re[a] - tr;
+                    im[a+1] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+                h = 2;
+            } else if (size >= 4) {
+                // quarters of size 1, all twiddle factors are 1
+                for (int a = 0; a < size; a += 4) {
+                    double er = re[a] + re[a+1], ei = im[a] + im[a+1];
+                    double fr = re[a] - re[a+1], fi = im[a] - im[a+1];
+                    double gr = re[a+2] + re[a+3], gi = im[a+2] + im[a+3];
+                    double hr = re[a+2] - re[a+3], hi = im[a+2] - im[a+3];
+                    re[a] = er + gr;   im[a] = ei + gi;
+                    re[a+2] = er - gr; im[a+2] = ei - gi;
+                    re[a+1] = fr + hi; im[a+1] = fi - hr;
+                    re[a+3] = fr - hi; im[a+3] = fi + hr;
+                }
+                h = 4;
+            }
+
+            for (; 4*h <= size; h *= 4) {
+                int twiddle = h - 1;
+                for (int start = 0; start < size; start += 4*h) {
+                    for (int k = 0; k < h; k++) {
+                        int t = twiddle + k;
+                        int i0 = start + k, i1 = i0 + h, i2 = i1 + h, i3 = i2 + h;
+
+                        // A = x0, B = W^k x2, C = W^2k x1, D = W^3k x3
+                        double ar = re[i0], ai = im[i0];
+                        double br = cos1[t]*re[i2] - sin1[t]*im[i2], bi = cos1[t]*im[i2] + sin1[t]*re[i2];
+                        double cr = cos2[t]*re[i1] - sin2[t]*im[i1], ci = cos2[t]*im[i1] + sin2[t]*re[i1];
+                        double dr = cos3[t]*re[i3] - sin3[t]*im[i3], di = cos3[t]*im[i3] + sin3[t]*re[i3];
+
+                        // X0 = A+C + (B+D), X2 = A+C - (B+D), X1 = A-C - i(B-D), X3 = A-C + i(B-D)
+                        double er = ar + cr, ei = ai + ci, fr = ar - cr, fi = ai - ci;
+                        double gr = br + dr, gi = bi + di, hr = br - dr, hi = bi - di;
+                        re[i0] = er + gr; im[i0] = ei + gi;
+                        re[i2] = er - gr; im[i2] = ei - gi;
+                        re[i1] = fr + hi; im[i1] = fi - hr;
+                        re[i3] = fr - hi; im[i3] = fi + hr;
+                    }
+                }
+            }
+        }
+
+        /**
+         * same as the double precision transform
+         */
+        @Override
+        public void transform(float[] re, float[] im)
+        {
+            for (int i = 0; i < size; i++) {
+                int j = reversed[i];
+                if (i < j) {
+                    float t = re[i]; re[i] = re[j]; re[j] = t;
+                    t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+            }
+
+            int h = 1;
+            if (radix2) {
+                for (int a = 0; a + 1 < size; a += 2) {
+                    float tr = re[a+1], ti = im[a+1];
+                    re[a+1] = re[a] - tr;
+                    im[a+1] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+                h = 2;
+            } else if (size >= 4) {
+                for (int a = 0; a < size; a += 4) {
+                    float er = re[a] + re[a+1], ei = im[a] + im[a+1];
+                    float fr = re[a] - re[a+1], fi = im[a] - im[a+1];
+                    float gr = re[a+2] + re[a+3], gi = im[a+2] + im[a+3];
+                    float hr = re[a+2] - re[a+3], hi = im[a+2] - im[a+3];
+                    re[a] = er + gr;   im[a] = ei + gi;
+                    re[a+2] = er - gr; im[a+2] = ei - gi;
+                    re[a+1] = fr + hi; im[a+1] = fi - hr;
+                    re[a+3] = fr - hi; im[a+3] = fi + hr;
+                }
+                h = 4;
+            }
+
+            for (; 4*h <= size; h *= 4) {
+                int twiddle = h - 1;
+                for (int start = 0; start < size; start += 4*h) {
+                    for (int k = 0; k < h; k++) {
+                        int t = twiddle + k;
+                        int i0 = start + k, i1 = i0 + h, i2 = i1 + h, i3 = i2 + h;
+
+                        float ar = re[i0], ai = im[i0];
+                        float br = cos1f[t]*re[i2] - sin1f[t]*im[i2], bi = cos1f[t]*im[i2] + sin1f[t]*re[i2];
+                        float cr = cos2f[t]*re[i1] - sin2f[t]*im[i1], ci = cos2f[t]*im[i1] + sin2f[t]*re[i1];
+                        float dr = cos3f[t]*re[i3] - sin3f[t]*im[i3], di = cos3f[t]*im[i3] + sin3f[t]*re[i3];
+
+                        float er = ar + cr, ei = ai + ci, fr = ar - cr, fi = ai - ci;
+                        float gr = br + dr, gi = bi + di, hr = br - dr, hi = bi - di;
+                        re[i0] = er + gr; im[i0] = ei + gi;
+                        re[i2] = er - gr; im[i2] = ei - gi;
+                        re[i1] = fr + hi; im[i1] = fi - hr;
+                        re[i3] = fr - hi; im[i3] = fi + hr;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * sizes with small prime factors: self-sorting (Stockham) mixed radix algorithm, one stage per factor
+     *
+     * before the stage with radix p, the array holds n/l transforms of size l, where l is the product of the
+     * factors done so far. transform u, element j, of the samples u, u + n/l, u + 2n/l, ... is stored at u + n/l * j.
+     * the stage combines p of them into transforms of size l*p, reading and writing with stride 1 in u,
+     * so neither input nor output needs to be reordered.
+     */
+    private static final class MixedRadix extends FFT
+    {
+        private static final double SIN_60 = Math.sqrt(3) / 2;
+
+        private final int[] factors;
+        // twiddle factors W_(lp)^(c*j) of every stage at index j*p + c
+        private final double[][] twiddleRe, twiddleIm;
+        // cos and sin of 2*pi*m/p, m < p, of every stage
+        private final double[][] rootCos, rootSin;
+        private final ThreadLocal<double[][]> scratch;
+
+        MixedRadix(int size, int[] factors)
+        {
+            super(size);
+            this.factors = factors;
+            twiddleRe = new double[factors.length][];
+            twiddleIm = new double[factors.length][];
+            rootCos = new double[factors.length][];
+            rootSin = new double[factors.length][];
+            int l = 1;
+            for (int f = 0; f < factors.length; f++) {
+                int p = factors[f];
+                twiddleRe[f] = new double[l * p];
+                twiddleIm[f] = new double[l * p];
+                for (int j = 0; j < l; j++) {
+                    for (int c = 0; c < p; c++) {
+                        twiddleRe[f][j*p + c] = Math.cos(-2*Math.PI * c*j / (l*p));
+                        twiddleIm[f][j*p + c] = Math.sin(-2*Math.PI * c*j / (l*p));
+                    }
+                }
+                rootCos[f] = new double[p];
+                rootSin[f] = new double[p];
+                for (int m = 0; m < p; m++) {
+                    rootCos[f][m] = Math.cos(2*Math.PI * m / p);
+                    rootSin[f][m] = Math.sin(2*Math.PI * m / p);
+                }
+                l *= p;
+            }
+
+            int maxFactor = factors[factors.length - 1];
+            // second buffer of the ping-pong between stages, then the twiddled inputs of one butterfly
+            scratch = ThreadLocal.withInitial(() -> new double[][] {
+                new double[size], new double[size], new double[maxFactor], new double[maxFactor]
+            });
+        }
+
+        /**
+         * prime factors in ascending order, pairs of 2 merged into 4
+         */
+        static int[] factorize(int n)
+        {
+            var factors = new int[32];
+            int count = 0;
+            while (n % 4 == 0) { factors[count++] = 4; n /= 4; }
+            for (int p = 2; p <= n; p++) {
+                if (p > 2 && (long) p * p > n) p = n; // n is prime
+                while (n % p == 0) { factors[count++] = p; n /= p; }
+            }
+            var result = Arrays.copyOf(factors, count);
+            Arrays.sort(result);
+            return result;
+        }
+
+        @Override
+        public void transform(double[] re, double[] im)
+        {
+            var s = scratch.get();
+            double[] xr = re, xi = im, yr = s[0], yi = s[1];
+
+            int l = 1;
+            for (int f = 0; f < factors.length; f++) {
+                int p = factors[f];
+                int r = size / (l*p);
+                switch (p) {
+                    case 2: radix2(l, r, twiddleRe[f], twiddleIm[f], xr, xi, yr, yi); break;
+                    case 3: radix3(l, r, twiddleRe[f], twiddleIm[f], xr, xi, yr, yi); break;
+                    case 4: radix4(l, r, twiddleRe[f], twiddleIm[f], xr, xi, yr, yi); break;
+                    default: radixOdd(p, l, r, f, xr, xi, yr, yi, s[2], s[3]);
+                }
+                double[] tr = xr, ti = xi;
+                xr = yr; xi = yi;
+                yr = tr; yi = ti;
+                l *= p;
+            }
+            if (xr != re) {
+                System.arraycopy(xr, 0, re, 0, size);
+                System.arraycopy(xi, 0, im, 0, size);
+            }
+        }
+
+        // every stage computes y[u + r*(j + l*q)] = sum over c of W_(lp)^(c*(j + l*q)) x[u + r*(c + p*j)],
+        // by twiddling the inputs with W_(lp)^(c*j) and a DFT of size p over c
+
+        private static void radix2(int l, int r, double[] wr, double[] wi, double[] xr, double[] xi, double[] yr, double[] yi)
+        {
+            int stride = r * l;
+            for (int j = 0; j < l; j++) {
+                double w1r = wr[2*j + 1], w1i = wi[2*j + 1];
+                int in = 2*r * j, out = r * j;
+                for (int u = 0; u < r; u++) {
+                    int i0 = in + u, i1 = i0 + r, o = out + u;
+                    double t1r = w1r*xr[i1] - w1i*xi[i1], t1i = w1r*xi[i1] + w1i*xr[i1];
+                    yr[o] = xr[i0] + t1r;          yi[o] = xi[i0] + t1i;
+                    yr[o + stride] = xr[i0] - t1r; yi[o + stride] = xi[i0] - t1i;
+                }
+            }
+        }
+
+        private static void radix3(int l, int r, double[] wr, double[] wi, double[] xr, double[] xi, double[] yr, double[] yi)
+        {
+            int stride = r * l;
+            for (int j = 0; j < l; j++) {
+                double w1r = wr[3*j + 1], w1i = wi[3*j + 1], w2r = wr[3*j + 2], w2i = wi[3*j + 2];
+                int in = 3*r * j, out = r * j;
+                for (int u = 0; u < r; u++) {
+                    int i0 = in + u, i1 = i0 + r, i2 = i1 + r, o = out + u;
+                    double t1r = w1r*xr[i1] - w1i*xi[i1], t1i = w1r*xi[i1] + w1i*xr[i1];
+                    double t2r = w2r*xr[i2] - w2i*xi[i2], t2i = w2r*xi[i2] + w2i*xr[i2];
+
+                    double sr = t1r + t2r, si = t1i + t2i;
+                    double dr = t1r - t2r, di = t1i - t2i;
+                    double mr = xr[i0] - sr/2, mi = xi[i0] - si/2;
+                    yr[o] = xr[i0] + sr;               yi[o] = xi[i0] + si;
+                    yr[o + stride] = mr + SIN_60*di;   yi[o + stride] = mi - SIN_60*dr;
+                    yr[o + 2*stride] = mr - SIN_60*di; yi[o + 2*stride] = mi + SIN_60*dr;
+                }
+            }
+        }
+
+        private static void radix4(int l, int r, double[] wr, double[] wi, double[] xr, double[] xi, double[] yr, double[] yi)
+        {
+            int stride = r * l;
+            for (int j = 0; j < l; j++) {
+                double w1r = wr[4*j + 1], w1i = wi[4*j + 1], w2r = wr[4*j + 2], w2i = wi[4*j + 2], w3r = wr[4*j + 3], w3i = wi[4*j + 3];
+                int in = 4*r * j, out = r * j;
+                for (int u = 0; u < r; u++) {
+                    int i0 = in + u, i1 = i0 + r, i2 = i1 + r, i3 = i2 + r, o = out + u;
+                    double t1r = w1r*xr[i1] - w1i*xi[i1], t1i = w1r*xi[i1] + w1i*xr[i1];
+                    double t2r = w2r*xr[i2] - w2i*xi[i2], t2i = w2r*xi[i2] + w2i*xr[i2];
+                    double t3r = w3r*xr[i3] - w3i*xi[i3], t3i = w3r*xi[i3] + w3i*xr[i3];
+
+                    double er = xr[i0] + t2r, ei = xi[i0] + t2i, fr = xr[i0] - t2r, fi = xi[i0] - t2i;
+                    double gr = t1r + t3r, gi = t1i + t3i, hr = t1r - t3r, hi = t1i - t3i;
+                    yr[o] = er + gr;              yi[o] = ei + gi;
+                    yr[o + stride] = fr + hi;     yi[o + stride] = fi - hr;
+                    yr[o + 2*stride] = er - gr;   yi[o + 2*stride] = ei - gi;
+                    yr[o + 3*stride] = fr - hi;   yi[o + 3*stride] = fi + hr;
+                }
+            }
+        }
+
+        /**
+         * odd prime p, the DFT pairs outputs q and p-q, which share the products with cos and sin
+         */
+        private void radixOdd(int p, int l, int r, int f, double[] xr, double[] xi, double[] yr, double[] yi, double[] tr, double[] ti)
+        {
+            double[] wr = twiddleRe[f], wi = twiddleIm[f], cos = rootCos[f], sin = rootSin[f];
+            int stride = r * l, half = p / 2;
+            for (int j = 0; j < l; j++) {
+                int in = p*r * j, out = r * j;
+                for (int u = 0; u < r; u++) {
+                    for (int c = 0; c < p; c++) {
+                        int i = in + r*c + u;
+                        double w1 = wr[p*j + c], w2 = wi[p*j + c];
+                        tr[c] = w1*xr[i] - w2*xi[i];
+                        ti[c] = w1*xi[i] + w2*xr[i];
+                    }
+
+                    int o = out + u;
+                    double y0r = tr[0], y0i = ti[0];
+                    for (int c = 1; c <= half; c++) {
+                        y0r += tr[c] + tr[p-c];
+                        y0i += ti[c] + ti[p-c];
+                    }
+                    yr[o] = y0r;
+                    yi[o] = y0i;
+
+                    for (int q = 1; q <= half; q++) {
+                        // A = t0 + sum of (t_c + t_(p-c)) cos, B = sum of (t_c - t_(p-c)) sin, y_q = A - iB, y_(p-q) = A + iB
+                        double ar = tr[0], ai = ti[0], br = 0, bi = 0;
+                        int m = 0;
+                        for (int c = 1; c <= half; c++) {
+                            m += q;
+                            if (m >= p) m -= p;
+                            ar += (tr[c] + tr[p-c]) * cos[m];
+                            ai += (ti[c] + ti[p-c]) * cos[m];
+                            br += (tr[c] - tr[p-c]) * sin[m];
+                            bi += (ti[c] - ti[p-c]) * sin[m];
+                        }
+                        yr[o + q*stride] = ar + bi;       yi[o + q*stride] = ai - br;
+                        yr[o + (p-q)*stride] = ar - bi;   yi[o + (p-q)*stride] = ai + br;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * sizes with a large prime factor: Bluestein's algorithm
+     * with the chirp w_n = e^(-i*pi*n^2/N), X_k = w_k * sum over n of (x_n w_n) conj(w_(k-n)),
+     * a convolution that is computed by a power of two FFT of at least 2N-1 points
+     */
+    private static final class Bluestein extends FFT
+    {
+        private final FFT fft;
+        private final double[] chirpCos, chirpSin;
+        private final double[] filterRe, filterIm; // transform of the conjugated chirp
+        private final ThreadLocal<double[][]> scratch;
+
+        Bluestein(int size)
+        {
+            super(size);
+            int m = Integer.highestOneBit(2*size - 1) << 1;
+            fft = new PowerOfTwo(m); // not through forSize, which is running this constructor
+
+            chirpCos = new double[size];
+            chirpSin = new double[size];
+            for (int n = 0; n < size; n++) {
+                long square = (long) n * n % (2L * size); // keeps the angle small and exact
+                chirpCos[n] = Math.cos(-Math.PI * square / size);
+                chirpSin[n] = Math.sin(-Math.PI * square / size);
+            }
+
+            filterRe = new double[m];
+            filterIm = new double[m];
+            filterRe[0] = chirpCos[0];
+            filterIm[0] = -chirpSin[0];
+            for (int n = 1; n < size; n++) {
+                filterRe[n] = filterRe[m - n] = chirpCos[n];
+                filterIm[n] = filterIm[m - n] = -chirpSin[n];
+            }
+            fft.transform(filterRe, filterIm);
+
+            scratch = ThreadLocal.withInitial(() -> new double[2][m]);
+        }
+
+        @Override
+        public void transform(double[] re, double[] im)
+        {
+            var s = scratch.get();
+            double[] ar = s[0], ai = s[1];
+            int m = ar.length;
+
+            for (int n = 0; n < size; n++) {
+                ar[n] = re[n]*chirpCos[n] - im[n]*chirpSin[n];
+                ai[n] = re[n]*chirpSin[n] + im[n]*chirpCos[n];
+            }
+            Arrays.fill(ar, size, m, 0);
+            Arrays.fill(ai, size, m, 0);
+            fft.transform(ar, ai);
+
+            // multiply by the filter and conjugate, so the forward FFT computes the inverse one
+            for (int k = 0; k < m; k++) {
+                double r = ar[k]*filterRe[k] - ai[k]*filterIm[k];
+                double i = ar[k]*filterIm[k] + ai[k]*filterRe[k];
+                ar[k] = r;
+                ai[k] = -i;
+            }
+            fft.transform(ar, ai);
+
+            for (int k = 0; k < size; k++) {
+                double cr = ar[k] / m, ci = -ai[k] / m;
+                re[k] = cr*chirpCos[k] - ci*chirpSin[k];
+                im[k] = cr*chirpSin[k] + ci*chirpCos[k];
+            }
+        }
+    }
+}
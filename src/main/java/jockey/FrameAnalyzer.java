@@ -0,0 +1,273 @@
+package jockey;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * turns blocks of samples of one or more channels into spectra
+ * every channel has its own STFT and FFT workspace (or a {@link SlidingDFT}); with more than one channel, the channels of a block are analysed
+ * in parallel on a small fork-join pool, so the cost per block grows with the number of cores rather than channels
+ * if only frequencies far below the nyquist frequency are shown, every channel may be decimated first by a {@link Decimator}
+ *
+ * a frame of the analyser holds the bars of channel 0, followed by the bars of channel 1 and so on
+ * all buffers are allocated up front, processing a block allocates nothing
+ * @author jockey
+ */
+public class FrameAnalyzer implements AutoCloseable
+{
+    private final int channels;
+    private final FrequencyBinMap binMap;
+    private final ConstantQTransform constantQ; // null unless used instead of the bin map
+    private final int bars;
+    private final int frameSize; // input samples every frame is computed from
+    private final boolean decibelScale;
+    private final double amplitudeMax;
+    private final PipelineMetrics metrics; // null if not measured
+    private WelchAccumulator accumulator; // null unless averaging
+    private final ChannelTask[] tasks;
+    private final RecursiveAction all;
+    private final ForkJoinPool pool; // null for a single channel, which is analysed on the calling thread
+
+    private double[][] block;
+    private int blockFrames;
+    private long firstFrame, skipBefore;
+
+    /**
+     * @param maxBlockFrames the largest number of sample frames passed to {@link #process} at once
+     * @param hopSize sample frames between the starts of two frames, a multiple of the decimation
+     * @param decimation factor to reduce the sample rate by before the transform, 1 for none, see {@link Decimator#factor};
+     * the bin map (and the constant-Q transform) must be those of the reduced sample rate
+     * @param slidingDft update the spectrum with every sample instead of transforming every frame, cheaper for small hop sizes
+     * @param constantQ transform used instead of the FFT and the bin map, may be null; its frames are cut
+     * from the latest samples as those of the FFT, and its magnitudes are scaled to those of the FFT size of the bin map
+     * @param metrics receives the FFT and binning times of every frame, may be null
+     */
+    public FrameAnalyzer(int channels, int maxBlockFrames, int hopSize, int decimation, WindowFunction window, boolean slidingDft, FrequencyBinMap binMap, ConstantQTransform constantQ, boolean decibelScale, double amplitudeMax, PipelineMetrics metrics)
+    {
+        this.channels = channels;
+        this.binMap = binMap;
+        this.constantQ = constantQ;
+        this.bars = (constantQ != null ? constantQ.getBars() : binMap.getBars());
+        this.frameSize = (constantQ != null ? constantQ.getFftSize() : binMap.getFftSize()) * decimation;
+        this.decibelScale = decibelScale;
+        this.amplitudeMax = amplitudeMax;
+        this.metrics = metrics;
+
+        int maxFrames = maxBlockFrames / hopSize + 1;
+        tasks = new ChannelTask[channels];
+        for (int c = 0; c < channels; c++) tasks[c] = new ChannelTask(c, maxBlockFrames, hopSize, decimation, window, slidingDft, maxFrames);
+
+        all = new RecursiveAction() {
+            @Override
+            protected void compute()
+            {
+                for (var task : tasks) task.reinitialize(); // tasks are reused for every block
+                invokeAll(tasks);
+            }
+        };
+        pool = (channels > 1 ? new ForkJoinPool(Math.min(channels, Runtime.getRuntime().availableProcessors())) : null);
+    }
+
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    /**
+     * additionally add the FFT bins of every analysed frame to the averaged spectrum, which has to cover the bins that
+     * go into a bar (see {@link #accumulatedBins}) for every channel; not with the constant-Q transform
+     */
+    public void setAccumulator(WelchAccumulator accumulator)
+    {
+        if (accumulator != null && constantQ != null)
+            throw new IllegalStateException("the averaged spectrum needs the FFT, not the constant-Q transform");
+        this.accumulator = accumulator;
+    }
+
+    /**
+     * number of FFT bins from 0 on that go into a bar, which is what the sliding DFT computes
+     */
+    public static int accumulatedBins(FrequencyBinMap binMap)
+    {
+        return Math.max(1, binMap.getFirstBin()[binMap.getBars()]);
+    }
+
+    /**
+     * number of input samples every frame is computed from, the frame k ending hopSize * (k+1) samples into the input
+     * with the constant-Q transform, that is the length of its longest kernel rather than the FFT size of the bin map
+     */
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    /**
+     * length of a frame, the number of bars times the number of channels
+     */
+    public int getFrameLength()
+    {
+        return channels * bars;
+    }
+
+    /**
+     * feed a block of samples, samples[c] holding the samples of channel c
+     * frames are numbered from firstFrame on, frames numbered below skipBefore are cut but not analysed (e.g. because they are cached)
+     * @return the number of frames completed by this block, see {@link #copyFrame}
+     */
+    public int process(double[][] samples, int frames, long firstFrame, long skipBefore)
+    {
+        this.block = samples;
+        this.blockFrames = frames;
+        this.firstFrame = firstFrame;
+        this.skipBefore = skipBefore;
+
+        if (pool == null) tasks[0].compute();
+        else {
+            all.reinitialize();
+            pool.invoke(all);
+        }
+        return tasks[0].completed;
+    }
+
+    /**
+     * copy the k-th frame completed by the last block into out
+     */
+    public void copyFrame(int k, double[] out)
+    {
+        for (int c = 0; c < channels; c++) System.arraycopy(tasks[c].spectra[k], 0, out, c * bars, bars);
+    }
+
+    /**
+     * forget all samples, e.g. after jumping to another position of the audio
+     */
+    public void reset()
+    {
+        for (var task : tasks) {
+            if (task.stft != null) task.stft.reset();
+            else task.sdft.reset();
+            if (task.decimator != null) task.decimator.reset();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * analysis of one channel of a block
+     */
+    private class ChannelTask extends RecursiveAction
+    {
+        private final int channel;
+        private final Decimator decimator; // null without decimation
+        private final double[] decimated; // null without decimation
+        private final ShortTimeFourierTransform stft; // null when sliding
+        private final SlidingDFT sdft; // null unless sliding
+        private final SpectrumVisualizer.Workspace workspace;
+        private final double[][] spectra;
+        private int completed;
+
+        ChannelTask(int channel, int maxBlockFrames, int hopSize, int decimation, WindowFunction window, boolean sliding, int maxFrames)
+        {
+            this.channel = channel;
+            decimator = (decimation > 1 ? new Decimator(decimation, maxBlockFrames) : null);
+            decimated = (decimation > 1 ? new double[maxBlockFrames / decimation + 1] : null);
+            hopSize /= decimation; // frames are cut from the decimated samples
+            int fftSize = binMap.getFftSize();
+            if (constantQ != null) { // the kernels are windowed already
+                fftSize = constantQ.getFftSize();
+                window = WindowFunction.RECTANGULAR;
+                sliding = false;
+            }
+            // only the bins that go into a bar are followed by the sliding DFT
+            stft = (sliding ? null : new ShortTimeFourierTransform(fftSize, hopSize, window));
+            sdft = (sliding ? new SlidingDFT(fftSize, hopSize, window, accumulatedBins(binMap)) : null);
+            workspace = new SpectrumVisualizer.Workspace(fftSize);
+            spectra = new double[maxFrames][bars];
+        }
+
+        @Override
+        protected void compute()
+        {
+            var samples = block[channel];
+            int length = blockFrames;
+            if (decimator != null) {
+                length = decimator.process(samples, 0, length, decimated);
+                samples = decimated;
+            }
+            completed = 0;
+            if (sdft != null) {
+                computeSliding(samples, length);
+                return;
+            }
+            int offset = 0;
+            while (offset < length) {
+                offset += stft.write(samples, offset, length - offset);
+                if (!stft.hasFrame()) continue;
+
+                if (firstFrame + completed < skipBefore) stft.skipFrame();
+                else if (metrics == null) {
+                    SpectrumVisualizer.transform(workspace, stft.takeFrame());
+                    accumulate();
+                    bin(spectra[completed]);
+                } else {
+                    long start = System.nanoTime();
+                    SpectrumVisualizer.transform(workspace, stft.takeFrame());
+                    long transformed = System.nanoTime();
+                    accumulate();
+                    bin(spectra[completed]);
+                    metrics.get(PipelineMetrics.Stage.FFT).record(transformed - start);
+                    metrics.record(PipelineMetrics.Stage.BINNING, transformed);
+                }
+                completed++;
+            }
+        }
+
+        /**
+         * add the spectrum in the workspace to the averaged spectrum, before binning replaces it by magnitudes
+         */
+        private void accumulate()
+        {
+            var accumulator = FrameAnalyzer.this.accumulator;
+            if (accumulator != null) accumulator.add(channel, workspace.re, workspace.im);
+        }
+
+        /**
+         * fit the spectrum in the workspace into the bars
+         */
+        private void bin(double[] magnitudes)
+        {
+            if (constantQ == null) SpectrumVisualizer.binSpectrum(workspace, binMap, decibelScale, amplitudeMax, magnitudes);
+            else constantQ.binSpectrum(workspace, binMap.getFftSize() / 2.0, decibelScale, amplitudeMax, magnitudes);
+        }
+
+        /**
+         * the sliding DFT follows every sample, so the time of an "FFT" is that of updating it since the last frame
+         */
+        private void computeSliding(double[] samples, int length)
+        {
+            int offset = 0;
+            long start = System.nanoTime();
+            while (offset < length) {
+                offset += sdft.write(samples, offset, length - offset);
+                if (!sdft.hasFrame()) continue;
+
+                if (firstFrame + completed < skipBefore) sdft.skipFrame();
+                else {
+                    sdft.takeSpectrum(workspace.re, workspace.im);
+                    long transformed = System.nanoTime();
+                    accumulate();
+                    bin(spectra[completed]);
+                    if (metrics != null) {
+                        metrics.get(PipelineMetrics.Stage.FFT).record(transformed - start);
+                        metrics.record(PipelineMetrics.Stage.BINNING, transformed);
+                    }
+                }
+                completed++;
+                start = System.nanoTime();
+            }
+        }
+    }
+}
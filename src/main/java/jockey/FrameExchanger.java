@@ -0,0 +1,90 @@
+package jockey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * lock-free triple buffer handing the latest frame from one producer thread to one consumer thread
+ * the producer never waits for the consumer: a frame that is not picked up before the next one is published gets dropped
+ *
+ * producer: fill {@link #writeBuffer()}, then call {@link #publish()}
+ * consumer: {@link #latest()} returns the newest frame, or null if nothing was published since the last call
+ * @author jockey
+ */
+public class FrameExchanger implements FrameSource
+{
+    private static final int INDEX = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final double[][] buffers;
+    private final long[] timestamps = new long[3]; // System.nanoTime of publishing, travels with its buffer
+    private final AtomicInteger middle = new AtomicInteger(1); // index of the shared buffer, FRESH if not yet taken
+    private int back = 0; // only touched by the producer
+    private int front = 2; // only touched by the consumer
+    private volatile long published, dropped;
+
+    public FrameExchanger(int frameLength)
+    {
+        buffers = new double[3][frameLength];
+    }
+
+    @Override
+    public int getFrameLength()
+    {
+        return buffers[0].length;
+    }
+
+    /**
+     * buffer for the producer to fill the next frame into
+     */
+    public double[] writeBuffer()
+    {
+        return buffers[back];
+    }
+
+    /**
+     * make the frame in the write buffer the latest one
+     */
+    public void publish()
+    {
+        timestamps[back] = System.nanoTime();
+        int old = middle.getAndSet(back | FRESH);
+        back = old & INDEX;
+        if ((old & FRESH) != 0) dropped++; // single writer, so the counters need no atomic update
+        published++;
+    }
+
+    /**
+     * the newest published frame, or null if there is none since the last call
+     * the returned array belongs to the consumer until the next call
+     */
+    @Override
+    public double[] latest()
+    {
+        if ((middle.get() & FRESH) == 0) return null;
+        front = middle.getAndSet(front) & INDEX;
+        return buffers[front];
+    }
+
+    /**
+     * System.nanoTime at which the frame last returned by {@link #latest()} was published
+     */
+    @Override
+    public long getTimestamp()
+    {
+        return timestamps[front];
+    }
+
+    public long getPublished()
+    {
+        return published;
+    }
+
+    /**
+     * number of frames that were overwritten before the consumer took them
+     */
+    @Override
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
@@ -0,0 +1,29 @@
+package jockey;
+
+/**
+ * frames for the display, handed over from the analysis thread
+ * @author jockey
+ */
+public interface FrameSource
+{
+    /**
+     * length of every frame
+     */
+    int getFrameLength();
+
+    /**
+     * the frame to show now, or null if it is the same as at the last call
+     * the returned array belongs to the consumer until the next call
+     */
+    double[] latest();
+
+    /**
+     * System.nanoTime at which the frame last returned by {@link #latest()} was due, i.e. published or heard
+     */
+    long getTimestamp();
+
+    /**
+     * number of published frames the consumer never got
+     */
+    long getDropped();
+}
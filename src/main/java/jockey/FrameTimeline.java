@@ -0,0 +1,175 @@
+package jockey;
+
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * the latest frames together with the audio frame they belong to, for showing them in sync with playback
+ * the analysis runs ahead of what is heard and appends every frame to a ring; the display asks the clock which
+ * audio frame is being heard and takes the newest frame at or before it, so the picture follows the sound within
+ * one hop however far ahead the analysis is
+ *
+ * there is one producer and one consumer and neither waits for the other: the consumer copies a frame and then checks
+ * that the producer has not come round the ring to its slot meanwhile, otherwise it looks again
+ * frames the display passes over can still be handed to a listener on the display's thread, e.g. for a waterfall
+ * @author jockey
+ */
+class FrameTimeline implements FrameSource
+{
+    private static final int ATTEMPTS = 4;
+
+    private final double[][] frames;
+    private final long[] positions; // audio frame of every frame, e.g. the center of its window
+    private final float sampleRate;
+    private final LongSupplier clock;
+    private volatile long published;
+    private final double[] front; // only touched by the consumer
+    private long frontIndex = -1;
+    private long frontTimestamp;
+    private long frontPosition;
+    private long listened = -1; // last frame handed to the listener
+    private Consumer<double[]> listener; // null if none
+    private volatile long dropped;
+
+    /**
+     * @param capacity number of frames kept, more than the analysis can be ahead of playback; the newest capacity-1
+     * can be taken, the oldest slot is the one the next frame is written to
+     * @param sampleRate audio frames per second of the clock
+     * @param clock audio frame being heard, negative while nothing is
+     */
+    FrameTimeline(int frameLength, int capacity, float sampleRate, LongSupplier clock)
+    {
+        frames = new double[capacity][frameLength];
+        positions = new long[capacity];
+        front = new double[frameLength];
+        this.sampleRate = sampleRate;
+        this.clock = clock;
+    }
+
+    @Override
+    public int getFrameLength()
+    {
+        return front.length;
+    }
+
+    /**
+     * hand every frame to the listener once its audio is heard, on the consumer's thread and in order, including
+     * frames the consumer passes over; the listener must not keep the array
+     */
+    void setFrameListener(Consumer<double[]> listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * buffer for the producer to fill the next frame into
+     */
+    double[] writeBuffer()
+    {
+        return frames[(int) (published % frames.length)];
+    }
+
+    /**
+     * append the frame in the write buffer
+     * @param position the audio frame it belongs to
+     */
+    void publish(long position)
+    {
+        long index = published;
+        int slot = (int) (index % frames.length);
+        positions[slot] = position;
+        published = index + 1; // volatile write, publishes the frame
+        VarHandle.storeStoreFence(); // the next frame is only written into a slot after it is published
+    }
+
+    /**
+     * the newest frame at or before the position of the clock
+     */
+    @Override
+    public double[] latest()
+    {
+        return at(clock.getAsLong());
+    }
+
+    /**
+     * the newest frame at or before the given audio frame, or null if there is none or it was returned last time
+     * after a jump backwards, frames of the new position come first as they are the newest
+     */
+    double[] at(long position)
+    {
+        if (position < 0) return null;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            long end = published;
+            long index = -1;
+            for (long i = end - 1; i > Math.max(-1, end - frames.length); i--) { // the oldest slot is the producer's next
+                if (positions[(int) (i % frames.length)] <= position) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0 || index == frontIndex) return null;
+
+            // frames passed over since the last call go to the listener first
+            if (listener != null) {
+                for (long i = Math.max(listened + 1, end - frames.length + 1); i < index; i++) {
+                    if (copy(i)) listener.accept(front);
+                    listened = i;
+                }
+            }
+
+            long heard = positions[(int) (index % frames.length)];
+            if (!copy(index)) continue; // overwritten while copying
+
+            if (index > frontIndex + 1 && frontIndex >= 0) dropped += index - frontIndex - 1;
+            frontIndex = index;
+            frontPosition = heard;
+            // the frame was due when the clock passed its position, which is the start of its latency
+            frontTimestamp = System.nanoTime() - (long) ((position - heard) * 1e9 / sampleRate);
+            if (listener != null && index > listened) {
+                listener.accept(front);
+                listened = index;
+            }
+            return front;
+        }
+        return null; // the producer is too fast to copy a frame, try again on the next call
+    }
+
+    /**
+     * audio frame of the frame last returned by {@link #latest()}
+     */
+    long getPosition()
+    {
+        return frontPosition;
+    }
+
+    /**
+     * copy frame i into the front buffer
+     * @return whether the copy is complete, i.e. the producer did not reuse the slot meanwhile
+     */
+    private boolean copy(long i)
+    {
+        System.arraycopy(frames[(int) (i % frames.length)], 0, front, 0, front.length);
+        VarHandle.acquireFence(); // the copy is complete before checking whether the slot was reused
+        return published - i < frames.length;
+    }
+
+    /**
+     * System.nanoTime at which the audio of the frame last returned by {@link #latest()} was heard, rather than when
+     * it was published, which is up to the read-ahead earlier
+     */
+    @Override
+    public long getTimestamp()
+    {
+        return frontTimestamp;
+    }
+
+    /**
+     * frames passed over by the consumer, because more than one were published between two calls
+     */
+    @Override
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
@@ -0,0 +1,151 @@
+package jockey;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * precomputed assignment of FFT bins to the frequency bins (bars) of {@link SpectrumVisualizer#makeFrequencyBins}
+ * bar b collects the FFT bins from firstBin[b] up to (excluding) firstBin[b+1], so binning a spectrum is one pass over two arrays
+ * optionally, bars that receive no FFT bin (narrow low bars on an octave scale) are interpolated from the two nearest FFT bins
+ *
+ * maps only depend on their parameters, so they are cached and shared, see {@link #of}
+ * @author jockey
+ */
+public class FrequencyBinMap
+{
+    private static final Map<Key, FrequencyBinMap> CACHE = new ConcurrentHashMap<>();
+
+    private final int fftSize;
+    private final double step;
+    private final double[] frequencies;
+    private final int[] firstBin;
+    private final int[] interpolationBin; // -1 for bars that are not interpolated
+    private final double[] interpolationWeight;
+
+    private FrequencyBinMap(float sampleRate, int fftSize, float frequencyMax, boolean octaveScale, double octave, boolean interpolate)
+    {
+        this.fftSize = fftSize;
+        step = sampleRate / fftSize;
+        frequencies = SpectrumVisualizer.makeFrequencyBins(frequencyMax, step, octaveScale, octave);
+        int bars = frequencies.length;
+
+        // same walk as getSpectrum: every FFT bin goes into the last bar starting at or below its frequency
+        firstBin = new int[bars + 1];
+        double freq = 0;
+        int bar = 0, i;
+        for (i = 0; i < fftSize / 2 && freq <= frequencyMax; i++) {
+            while (bar < bars-1 && freq >= frequencies[bar+1]) firstBin[++bar] = i;
+            freq += step;
+        }
+        while (bar < bars) firstBin[++bar] = i;
+        int usedBins = i;
+
+        interpolationBin = new int[bars];
+        interpolationWeight = new double[bars];
+        for (int b = 0; b < bars; b++) {
+            interpolationBin[b] = -1;
+            if (!interpolate || firstBin[b] != firstBin[b+1] || usedBins < 2) continue;
+
+            double end = (b+1 < bars ? frequencies[b+1] : frequencyMax);
+            double position = (frequencies[b] + end) / 2 / step; // center of the bar in FFT bins
+            int k = Math.max(0, Math.min(usedBins - 2, (int) Math.floor(position)));
+            interpolationBin[b] = k;
+            interpolationWeight[b] = Math.max(0, Math.min(1, position - k));
+        }
+    }
+
+    /**
+     * get the (cached) map for the given analysis parameters
+     */
+    public static FrequencyBinMap of(float sampleRate, int fftSize, float frequencyMax, boolean octaveScale, double octave, boolean interpolate)
+    {
+        var key = new Key(sampleRate, fftSize, frequencyMax, octaveScale, octaveScale ? octave : 0, interpolate);
+        return CACHE.computeIfAbsent(key, k -> new FrequencyBinMap(sampleRate, fftSize, frequencyMax, octaveScale, octave, interpolate));
+    }
+
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+
+    /**
+     * frequency distance between two FFT bins
+     */
+    public double getStep()
+    {
+        return step;
+    }
+
+    public int getBars()
+    {
+        return frequencies.length;
+    }
+
+    /**
+     * starting frequency of every bar, as returned by {@link SpectrumVisualizer#makeFrequencyBins}
+     */
+    public double[] getFrequencies()
+    {
+        return frequencies;
+    }
+
+    /**
+     * index of the first FFT bin of every bar, followed by the end of the last bar
+     */
+    public int[] getFirstBin()
+    {
+        return firstBin;
+    }
+
+    /**
+     * lower FFT bin to interpolate an empty bar from, or -1 if the bar is not interpolated
+     */
+    public int[] getInterpolationBin()
+    {
+        return interpolationBin;
+    }
+
+    /**
+     * weight of the upper FFT bin when interpolating an empty bar
+     */
+    public double[] getInterpolationWeight()
+    {
+        return interpolationWeight;
+    }
+
+    private static final class Key
+    {
+        private final float sampleRate;
+        private final int fftSize;
+        private final float frequencyMax;
+        private final boolean octaveScale;
+        private final double octave;
+        private final boolean interpolate;
+
+        Key(float sampleRate, int fftSize, float frequencyMax, boolean octaveScale, double octave, boolean interpolate)
+        {
+            this.sampleRate = sampleRate;
+            this.fftSize = fftSize;
+            this.frequencyMax = frequencyMax;
+            this.octaveScale = octaveScale;
+            this.octave = octave;
+            this.interpolate = interpolate;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) return false;
+            var k = (Key) o;
+            return sampleRate == k.sampleRate && fftSize == k.fftSize && frequencyMax == k.frequencyMax
+                && octaveScale == k.octaveScale && octave == k.octave && interpolate == k.interpolate;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(sampleRate, fftSize, frequencyMax, octaveScale, octave, interpolate);
+        }
+    }
+}
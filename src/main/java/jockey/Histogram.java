@@ -0,0 +1,96 @@
+package jockey;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * histogram of non-negative long values (e.g. nanoseconds) in a fixed amount of memory
+ * values are counted in log-linear buckets: 16 buckets per power of two, so every recorded value is known to within 1/16
+ * recording is a few arithmetic operations and one atomic increment, and may happen from several threads at once
+ * @author jockey
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * bucket of a value, values below SUB_BUCKETS have one bucket each
+     */
+    static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * largest value that falls into the given bucket
+     */
+    static long highestValue(int bucket)
+    {
+        int group = bucket / SUB_BUCKETS;
+        if (group == 0) return bucket;
+        int shift = group - 1;
+        long next = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift;
+        return (next <= 0 ? Long.MAX_VALUE : next - 1);
+    }
+
+    public void record(long value)
+    {
+        if (value < 0) value = 0; // e.g. a clock that is not monotonic
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value));
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long n = count.get();
+        return (n == 0 ? 0 : (double) sum.get() / n);
+    }
+
+    /**
+     * value that the given fraction (0 to 1) of all recorded values is less than or equal to, up to the bucket resolution
+     */
+    public long getPercentile(double fraction)
+    {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) return Math.min(highestValue(b), max.get());
+        }
+        return max.get(); // counts recorded concurrently with this call
+    }
+
+    public void reset()
+    {
+        for (int b = 0; b < BUCKETS; b++) counts.set(b, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -2,8 +2,20 @@ package jockey;
 
 public class Launcher
 {
-    public static void main(String[] args)
+    public static void main(String[] args) throws Exception
     {
+        if (args.length > 0 && args[0].equals("batch")) { // headless analysis, see BatchSpectrogram
+            BatchSpectrogram.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("features")) { // headless features of a whole directory, see BatchFeatures
+            BatchFeatures.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) { // headless analysis for network clients, see SpectrumServer
+            SpectrumServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Player.main(args);
     }
 }
\ No newline at end of file
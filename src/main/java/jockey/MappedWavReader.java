@@ -0,0 +1,211 @@
+package jockey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * audio source reading a PCM WAV file through a memory mapping
+ * samples are decoded straight from the mapped file, so neither the file contents nor intermediate copies live on the heap
+ * files larger than one mapping are mapped in consecutive segments
+ * @author jockey
+ */
+public class MappedWavReader implements AudioSource
+{
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xfffe;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final AudioFormat format;
+    private final PcmDecoder decoder;
+    private final int frameSize;
+    private final long dataOffset;
+    private final long frameLength;
+    private final long framesPerSegment;
+
+    private MappedByteBuffer segment;
+    private long segmentStart = -1; // first frame of the current segment
+    private long framePosition;
+
+    public MappedWavReader(File file) throws IOException
+    {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            var chunk = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(chunk.limit(12), 0);
+            if (chunk.getInt(0) != 0x46464952 || chunk.getInt(8) != 0x45564157) // "RIFF", "WAVE"
+                throw new IOException("not a WAV file: " + file);
+
+            AudioFormat format = null;
+            long position = 12, dataOffset = -1, dataSize = 0;
+            while (dataOffset < 0) {
+                chunk.clear().limit(8);
+                if (channel.read(chunk, position) < 8) throw new IOException("no data chunk in " + file);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xffffffffL;
+
+                if (id == 0x20746d66) { // "fmt "
+                    readFully(chunk.clear().limit((int) Math.min(size, 40)), position + 8);
+                    format = parseFormat(chunk);
+                } else if (id == 0x61746164) { // "data"
+                    dataOffset = position + 8;
+                    dataSize = Math.min(size, channel.size() - dataOffset);
+                }
+                position += 8 + size + (size & 1); // chunks are padded to even sizes
+            }
+            if (format == null) throw new IOException("no fmt chunk in " + file);
+
+            this.format = format;
+            this.decoder = new PcmDecoder(format);
+            this.frameSize = format.getFrameSize();
+            this.dataOffset = dataOffset;
+            this.frameLength = dataSize / frameSize;
+            this.framesPerSegment = MAX_SEGMENT_SIZE / frameSize;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) throw new IOException("unexpected end of file");
+        }
+    }
+
+    private static AudioFormat parseFormat(ByteBuffer fmt) throws IOException
+    {
+        if (fmt.limit() < 16) throw new IOException("fmt chunk of " + fmt.limit() + " bytes, expected at least 16");
+        int tag = fmt.getShort(0) & 0xffff;
+        int channels = fmt.getShort(2);
+        float sampleRate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12);
+        int bits = fmt.getShort(14);
+        if (channels <= 0 || bits <= 0 || blockAlign <= 0 || blockAlign != channels * ((bits + 7) / 8))
+            throw new IOException("invalid WAV format: " + channels + " channels, " + bits + " bits, block align " + blockAlign);
+        if (tag == FORMAT_EXTENSIBLE && fmt.limit() >= 26) tag = fmt.getShort(24) & 0xffff; // first bytes of the sub format GUID
+
+        AudioFormat.Encoding encoding;
+        if (tag == FORMAT_FLOAT) encoding = AudioFormat.Encoding.PCM_FLOAT;
+        else if (tag == FORMAT_PCM) encoding = (bits == 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED);
+        else throw new IOException("unsupported WAV format tag " + tag);
+
+        return new AudioFormat(encoding, sampleRate, bits, channels, blockAlign, sampleRate, false);
+    }
+
+    /**
+     * whether the file is a WAV file with samples that can be decoded by {@link PcmDecoder}
+     */
+    public static boolean isSupported(File file)
+    {
+        try (var reader = new MappedWavReader(file)) {
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    @Override
+    public long getFrameLength()
+    {
+        return frameLength;
+    }
+
+    public long getFramePosition()
+    {
+        return framePosition;
+    }
+
+    public void setFramePosition(long framePosition)
+    {
+        if (framePosition < 0 || framePosition > frameLength)
+            throw new IllegalArgumentException("frame position " + framePosition + " outside of 0 to " + frameLength);
+        this.framePosition = framePosition;
+    }
+
+    /**
+     * the offset of every frame follows from the header, so any position can be reached at once
+     */
+    @Override
+    public boolean isSeekable()
+    {
+        return true;
+    }
+
+    @Override
+    public void seek(long frame)
+    {
+        setFramePosition(frame);
+    }
+
+    /**
+     * map the segment containing the given frame, unless it is already mapped
+     */
+    private void mapSegment(long frame) throws IOException
+    {
+        long start = frame / framesPerSegment * framesPerSegment;
+        if (start == segmentStart) return;
+        long frames = Math.min(framesPerSegment, frameLength - start);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start * frameSize, frames * frameSize);
+        segmentStart = start;
+    }
+
+    @Override
+    public int read(byte[] bytes, double[] samples, int offset, int frames) throws IOException
+    {
+        return read(bytes, samples, null, offset, frames);
+    }
+
+    @Override
+    public int readChannels(byte[] bytes, double[][] samples, int offset, int frames) throws IOException
+    {
+        return read(bytes, null, samples, offset, frames);
+    }
+
+    /**
+     * read into either the averaged samples or the per channel samples, whichever is not null
+     */
+    private int read(byte[] bytes, double[] samples, double[][] channelSamples, int offset, int frames) throws IOException
+    {
+        if (framePosition >= frameLength) return -1;
+
+        int total = 0;
+        while (total < frames && framePosition < frameLength) {
+            mapSegment(framePosition);
+            int index = (int) (framePosition - segmentStart);
+            int n = (int) Math.min(frames - total, Math.min(framesPerSegment - index, frameLength - framePosition));
+
+            if (samples != null) decoder.decode(segment, index * frameSize, n, samples, offset + total);
+            else decoder.decodeChannels(segment, index * frameSize, n, channelSamples, offset + total);
+            if (bytes != null) {
+                segment.position(index * frameSize);
+                segment.get(bytes, total * frameSize, n * frameSize);
+            }
+
+            total += n;
+            framePosition += n;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
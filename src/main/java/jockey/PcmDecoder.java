@@ -0,0 +1,142 @@
+package jockey;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * conversion of raw PCM bytes into samples, kept free of JavaFX so it can be used headless
+ * supports 8, 16, 24 and 32 bit integer and 32 bit float samples, channels are averaged together
+ * all formats are scaled to the range of 16 bit samples, so amplitudes are comparable between them
+ * @author jockey
+ */
+public class PcmDecoder
+{
+    private final int channels;
+    private final int sampleBytes;
+    private final int frameSize;
+    private final boolean floating;
+    private final boolean unsigned;
+    private final ByteOrder order;
+    private final double scale;
+
+    // wrapper of the last byte array decoded, so decoding the same array again allocates nothing
+    private byte[] wrapped;
+    private ByteBuffer wrapper;
+
+    public PcmDecoder(AudioFormat format)
+    {
+        var encoding = format.getEncoding();
+        channels = format.getChannels();
+        sampleBytes = format.getSampleSizeInBits() / 8;
+        frameSize = channels * sampleBytes;
+        floating = encoding.equals(AudioFormat.Encoding.PCM_FLOAT);
+        unsigned = encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED);
+        order = (format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+        if (floating && sampleBytes != 4 || unsigned && sampleBytes != 1
+            || !floating && !unsigned && !encoding.equals(AudioFormat.Encoding.PCM_SIGNED)
+            || format.getSampleSizeInBits() % 8 != 0 || sampleBytes < 1 || sampleBytes > 4)
+            throw new IllegalArgumentException("unsupported sample format " + format);
+
+        if (floating) scale = 32768.0;
+        else scale = Math.pow(2, 16 - 8*sampleBytes);
+    }
+
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    /**
+     * decode frames from a byte array into samples, starting at index offset of samples
+     */
+    public void decode(byte[] bytes, int frames, double[] samples, int offset)
+    {
+        if (bytes != wrapped) {
+            wrapped = bytes;
+            wrapper = ByteBuffer.wrap(bytes);
+        }
+        decode(wrapper, 0, frames, samples, offset);
+    }
+
+    /**
+     * decode frames starting at byte index position of buffer into samples, starting at index offset of samples
+     * only absolute reads are used, so the position of the buffer is left untouched
+     */
+    public void decode(ByteBuffer buffer, int position, int frames, double[] samples, int offset)
+    {
+        var bo = buffer.order();
+        buffer.order(order);
+        for (int i = 0; i < frames; i++) {
+            int frame = position + i * frameSize;
+            double sum = 0;
+            // average channels together
+            for (int j = 0; j < channels; j++) {
+                sum += sample(buffer, frame + j * sampleBytes);
+            }
+            samples[offset + i] = sum / channels * scale;
+        }
+        buffer.order(bo);
+    }
+
+    /**
+     * decode frames from a byte array into one sample array per channel, starting at index offset of each
+     */
+    public void decodeChannels(byte[] bytes, int frames, double[][] samples, int offset)
+    {
+        if (bytes != wrapped) {
+            wrapped = bytes;
+            wrapper = ByteBuffer.wrap(bytes);
+        }
+        decodeChannels(wrapper, 0, frames, samples, offset);
+    }
+
+    /**
+     * decode frames starting at byte index position of buffer into one sample array per channel, starting at index offset of each
+     */
+    public void decodeChannels(ByteBuffer buffer, int position, int frames, double[][] samples, int offset)
+    {
+        var bo = buffer.order();
+        buffer.order(order);
+        for (int i = 0; i < frames; i++) {
+            int frame = position + i * frameSize;
+            for (int j = 0; j < channels; j++) {
+                samples[j][offset + i] = sample(buffer, frame + j * sampleBytes) * scale;
+            }
+        }
+        buffer.order(bo);
+    }
+
+    private double sample(ByteBuffer buffer, int index)
+    {
+        switch (sampleBytes) {
+            case 1:
+                return (unsigned ? (buffer.get(index) & 0xff) - 128 : buffer.get(index));
+            case 2:
+                return buffer.getShort(index);
+            case 3:
+                int b0 = buffer.get(index) & 0xff, b1 = buffer.get(index+1) & 0xff, b2 = buffer.get(index+2);
+                return (order == ByteOrder.LITTLE_ENDIAN ? (b2 << 16 | b1 << 8 | b0) : ((byte) b0 << 16 | b1 << 8 | (b2 & 0xff)));
+            default:
+                return (floating ? buffer.getFloat(index) : buffer.getInt(index));
+        }
+    }
+
+    /**
+     * convert byte array into double array suitable for processing by the FFT
+     */
+    public static double[] toDoubles(AudioFormat format, byte[] bytes)
+    {
+        var decoder = new PcmDecoder(format);
+        var doubles = new double[bytes.length / decoder.frameSize];
+        decoder.decode(bytes, doubles.length, doubles, 0);
+        return doubles;
+    }
+}
@@ -0,0 +1,196 @@
+package jockey;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * timings and counters of the playback and analysis pipeline
+ * every stage records its durations in nanoseconds into a {@link Histogram}, so the memory used is fixed
+ * and recording costs two calls of System.nanoTime plus a few atomic increments, cheap enough to always be on
+ *
+ * the metrics can be shown on the spectrum (see {@link #overlay()}) or written to a JSON file periodically
+ * @author jockey
+ */
+public class PipelineMetrics
+{
+    /**
+     * the stages of the pipeline, in the order a block of audio passes them
+     */
+    public enum Stage
+    {
+        READ("read"), // reading and decoding a block of samples
+        FFT("fft"), // the FFT of one frame of one channel
+        BINNING("binning"), // fitting the FFT of one frame of one channel into the bars
+        PUBLISH("publish"), // copying a frame from the analysis or cache and handing it to the renderer
+        WRITE("write"), // handing a block to the audio output, blocks while its buffer is full
+        RENDER("render"); // drawing a frame on the JavaFX application thread
+
+        private final String key;
+
+        Stage(String key)
+        {
+            this.key = key;
+        }
+    }
+
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+    private final Histogram latency = new Histogram();
+    private final AtomicLong framesAnalysed = new AtomicLong();
+    private final AtomicLong framesCached = new AtomicLong();
+    private final AtomicLong framesRendered = new AtomicLong();
+    private final long start = System.nanoTime();
+    private volatile FrameSource frames;
+
+    public PipelineMetrics()
+    {
+        for (var stage : Stage.values()) stages.put(stage, new Histogram());
+    }
+
+    /**
+     * record the time since start, a value of System.nanoTime taken when the stage began
+     */
+    public void record(Stage stage, long start)
+    {
+        stages.get(stage).record(System.nanoTime() - start);
+    }
+
+    public Histogram get(Stage stage)
+    {
+        return stages.get(stage);
+    }
+
+    /**
+     * time from publishing a frame until it is drawn, with playback from hearing its audio
+     */
+    public Histogram getLatency()
+    {
+        return latency;
+    }
+
+    public void frameAnalysed()
+    {
+        framesAnalysed.incrementAndGet();
+    }
+
+    public void frameCached()
+    {
+        framesCached.incrementAndGet();
+    }
+
+    public void frameRendered()
+    {
+        framesRendered.incrementAndGet();
+    }
+
+    /**
+     * the frames for the display, whose dropped frames are reported
+     */
+    public void setFrames(FrameSource frames)
+    {
+        this.frames = frames;
+    }
+
+    public long getFramesAnalysed()
+    {
+        return framesAnalysed.get();
+    }
+
+    public long getFramesCached()
+    {
+        return framesCached.get();
+    }
+
+    public long getFramesRendered()
+    {
+        return framesRendered.get();
+    }
+
+    /**
+     * frames published but never picked up by the renderer
+     */
+    public long getFramesDropped()
+    {
+        var frames = this.frames;
+        return (frames != null ? frames.getDropped() : 0);
+    }
+
+    /**
+     * short text for drawing over the spectrum, one line per stage
+     */
+    public String overlay()
+    {
+        var text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "frames %d analysed, %d cached, %d rendered, %d dropped%n",
+            getFramesAnalysed(), getFramesCached(), getFramesRendered(), getFramesDropped()));
+        for (var stage : Stage.values()) overlayLine(text, stage.key, stages.get(stage));
+        overlayLine(text, "latency", latency);
+        return text.toString();
+    }
+
+    private static void overlayLine(StringBuilder text, String name, Histogram h)
+    {
+        text.append(String.format(Locale.ROOT, "%-8s p50 %8.1f  p99 %8.1f  max %8.1f us%n",
+            name, h.getPercentile(0.5) / 1e3, h.getPercentile(0.99) / 1e3, h.getMax() / 1e3));
+    }
+
+    /**
+     * all metrics as a JSON object, times in microseconds
+     */
+    public String toJson()
+    {
+        var json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"uptimeMillis\": %d,%n", (System.nanoTime() - start) / 1_000_000));
+        json.append(String.format(Locale.ROOT, "  \"frames\": {\"analysed\": %d, \"cached\": %d, \"rendered\": %d, \"dropped\": %d},%n",
+            getFramesAnalysed(), getFramesCached(), getFramesRendered(), getFramesDropped()));
+        json.append("  \"stages\": {\n");
+        for (var stage : Stage.values()) {
+            json.append("    \"").append(stage.key).append("\": ");
+            appendJson(json, stages.get(stage));
+            json.append(stage.ordinal() < Stage.values().length-1 ? ",\n" : "\n");
+        }
+        json.append("  },\n  \"latency\": ");
+        appendJson(json, latency);
+        return json.append("\n}\n").toString();
+    }
+
+    private static void appendJson(StringBuilder json, Histogram h)
+    {
+        json.append(String.format(Locale.ROOT, "{\"count\": %d, \"mean\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}",
+            h.getCount(), h.getMean() / 1e3, h.getPercentile(0.5) / 1e3, h.getPercentile(0.9) / 1e3,
+            h.getPercentile(0.99) / 1e3, h.getPercentile(0.999) / 1e3, h.getMax() / 1e3));
+    }
+
+    /**
+     * replace the file with the current metrics, readers never see a partially written file
+     */
+    public void dump(Path file) throws IOException
+    {
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, toJson().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * dump the metrics to the file every period milliseconds on the given executor
+     */
+    public ScheduledFuture<?> dumpPeriodically(ScheduledExecutorService executor, Path file, long period)
+    {
+        return executor.scheduleAtFixedRate(() -> {
+            try {
+                dump(file);
+            } catch (IOException ex) {
+                System.err.println("could not write metrics to " + file + ": " + ex.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,167 @@
+package jockey;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * plays audio on a thread of its own, so the analysis never holds up the line and the line never holds up the analysis
+ * the reader fills chunks of a ring and the playback thread writes them to the line; the reader can be as far ahead
+ * as the ring is long, and only waits once it is. every chunk carries the audio frame it starts at, and the playback
+ * thread relates it to the frame position of the line, so {@link #getPosition()} is the audio frame being heard
+ *
+ * after a jump to another position, the chunks still queued are dropped and the line is flushed
+ * @author jockey
+ */
+class PlaybackStage implements AutoCloseable
+{
+    private final SourceDataLine sdl;
+    private final int frameSize;
+    private final PipelineMetrics metrics;
+    private final byte[][] chunks;
+    private final int[] lengths; // bytes of every chunk
+    private final long[] positions; // audio frame every chunk starts at
+    private final AtomicLong written = new AtomicLong(); // chunks, only advanced by the reader
+    private final AtomicLong taken = new AtomicLong(); // chunks, only advanced by the playback thread
+    private final Thread thread;
+    private volatile long discardBefore;
+    private volatile long offset = Long.MIN_VALUE; // audio frame minus line frame, MIN_VALUE before anything was played
+    private volatile boolean finished, closed;
+    private volatile Thread reader;
+
+    /**
+     * start the playback thread, the line has to be open and started
+     * @param chunkBytes largest chunk, e.g. one read buffer
+     * @param chunkCount number of chunks the reader may be ahead of the line
+     */
+    PlaybackStage(SourceDataLine sdl, int chunkBytes, int chunkCount, PipelineMetrics metrics)
+    {
+        this.sdl = sdl;
+        this.frameSize = sdl.getFormat().getFrameSize();
+        this.metrics = metrics;
+        chunks = new byte[chunkCount][chunkBytes];
+        lengths = new int[chunkCount];
+        positions = new long[chunkCount];
+
+        thread = new Thread(this::play, "audio-playback");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * audio frame being heard, -1 until playback has started
+     */
+    long getPosition()
+    {
+        long offset = this.offset;
+        return (offset == Long.MIN_VALUE ? -1 : offset + sdl.getLongFramePosition());
+    }
+
+    /**
+     * chunks written but not played yet
+     */
+    int getQueued()
+    {
+        return (int) (written.get() - taken.get());
+    }
+
+    /**
+     * buffer for the reader to fill the next chunk into, waits while the ring is full
+     */
+    byte[] writeBuffer() throws IOException
+    {
+        reader = Thread.currentThread();
+        long index = written.get();
+        while (index - taken.get() >= chunks.length) {
+            if (!thread.isAlive()) throw new IOException("playback has stopped");
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10)); // woken by the playback thread
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("interrupted while waiting for playback");
+        }
+        return chunks[(int) (index % chunks.length)];
+    }
+
+    /**
+     * queue the chunk in the write buffer
+     * @param position audio frame the chunk starts at
+     */
+    void publish(int bytes, long position)
+    {
+        long index = written.get();
+        int slot = (int) (index % chunks.length);
+        lengths[slot] = bytes;
+        positions[slot] = position;
+        written.set(index + 1); // volatile write, publishes the chunk to the playback thread
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * drop all chunks queued so far, e.g. after a jump to another position
+     */
+    void discard()
+    {
+        discardBefore = written.get();
+    }
+
+    /**
+     * no more chunks follow, wait until all queued ones have been written to the line
+     */
+    void finish() throws IOException
+    {
+        finished = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for playback");
+        }
+    }
+
+    private void play()
+    {
+        long expected = -1; // audio frame following the last chunk
+        try {
+            while (!closed) {
+                long index = taken.get();
+                if (index == written.get()) {
+                    if (finished) break;
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10)); // woken by the reader
+                    continue;
+                }
+
+                int slot = (int) (index % chunks.length);
+                if (index >= discardBefore) {
+                    long position = positions[slot];
+                    if (position != expected) {
+                        // a jump: what the line still holds is of the old position
+                        if (expected >= 0) sdl.flush();
+                        offset = position - sdl.getLongFramePosition();
+                    }
+                    long start = System.nanoTime();
+                    sdl.write(chunks[slot], 0, lengths[slot]);
+                    metrics.record(PipelineMetrics.Stage.WRITE, start);
+                    expected = position + lengths[slot] / frameSize;
+                }
+                taken.set(index + 1); // volatile write, frees the chunk for the reader
+                LockSupport.unpark(reader);
+            }
+        } finally {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    /**
+     * stop playing after the current chunk, without waiting for the rest
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+}
@@ -2,17 +2,16 @@ package jockey;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.Executors;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.SourceDataLine;
-import javax.sound.sampled.TargetDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -26,8 +25,10 @@ import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -104,6 +105,19 @@ public class Player extends Application
         });
         grid.add(audioOutput, 1, 3);
 
+        // microphone format, captured on its own thread
+        var microphoneLabel = new Label("Microphone");
+        grid.add(microphoneLabel, 0, 4);
+        var sampleRate = new TextField("8000");
+        sampleRate.setPromptText("Sample rate");
+        var sampleSize = new TextField("16");
+        sampleSize.setPromptText("Bits per sample");
+        var lineBufferSize = new TextField("1024");
+        lineBufferSize.setPromptText("Line buffer size");
+        var hbMicrophone = new HBox(10, sampleRate, sampleSize, lineBufferSize);
+        hbMicrophone.disableProperty().bind(usesMicrophone.not());
+        grid.add(hbMicrophone, 1, 4);
+
         // read buffer size
         var readBufferSizeLabel = new Label("Read Buffer Size");
         grid.add(readBufferSizeLabel, 0, 5);
@@ -145,6 +159,44 @@ public class Player extends Application
         var decibelScale = new CheckBox("Decibel Scale");
         grid.add(decibelScale, 0, 10);
 
+        // constant-Q transform instead of the FFT, for the octave scale only
+        var constantQ = new CheckBox("Constant-Q");
+        constantQ.disableProperty().bind(octaveScale.selectedProperty().not());
+        grid.add(constantQ, 1, 10);
+
+        // fft size
+        var fftSizeLabel = new Label("FFT Size");
+        grid.add(fftSizeLabel, 0, 11);
+        var fftSize = new TextField();
+        fftSize.setPromptText("Samples per read buffer");
+        grid.add(fftSize, 1, 11);
+
+        // hop size
+        var hopSizeLabel = new Label("Hop Size");
+        grid.add(hopSizeLabel, 0, 12);
+        var hopSize = new TextField();
+        hopSize.setPromptText("FFT size (no overlap)");
+        grid.add(hopSize, 1, 12);
+
+        // window function
+        var windowLabel = new Label("Window");
+        grid.add(windowLabel, 0, 13);
+        var window = new ChoiceBox<WindowFunction>(FXCollections.observableArrayList(WindowFunction.values()));
+        window.setValue(WindowFunction.RECTANGULAR);
+        grid.add(window, 1, 13);
+
+        // per channel analysis
+        var perChannel = new CheckBox("Per Channel");
+        grid.add(perChannel, 0, 14);
+
+        // decimation before the FFT, if the frequency max is far below the nyquist frequency
+        var decimate = new CheckBox("Decimate");
+        grid.add(decimate, 1, 14);
+
+        // sliding DFT, for short read buffers and hop sizes of live input
+        var slidingDft = new CheckBox("Sliding DFT");
+        grid.add(slidingDft, 0, 15);
+
         // change audio source based on audio input choice
         group.selectedToggleProperty().addListener((ov, oldToggle, newToggle) -> {
             if (newToggle == rb1) {
@@ -157,6 +209,7 @@ public class Player extends Application
                 btn2.setDisable(true);
                 audioOutput.setDisable(true);
                 usesMicrophone.setValue(true);
+                slidingDft.setSelected(true);
                 // readBufferSize.setText("512");
                 // spectrumSmoothness.setText("2");
             }
@@ -177,13 +230,23 @@ public class Player extends Application
                 frequencyMax.getText(), 
                 octaveScale.isSelected(),
                 octaveParts.getText().isEmpty() ? 0 : Integer.parseInt(octaveParts.getText()),
-                decibelScale.isSelected()
+                decibelScale.isSelected(),
+                fftSize.getText().isEmpty() ? 0 : Integer.parseInt(fftSize.getText()),
+                hopSize.getText().isEmpty() ? 0 : Integer.parseInt(hopSize.getText()),
+                window.getValue(),
+                perChannel.isSelected(),
+                slidingDft.isSelected(),
+                constantQ.isSelected(),
+                decimate.isSelected(),
+                Float.parseFloat(sampleRate.getText()),
+                Integer.parseInt(sampleSize.getText()),
+                Integer.parseInt(lineBufferSize.getText())
             );
         });
         var hbBtn = new HBox(10);
         hbBtn.setAlignment(Pos.BOTTOM_RIGHT);
         hbBtn.getChildren().add(btn);
-        grid.add(hbBtn, 1, 10);
+        grid.add(hbBtn, 1, 15);
 
         var menu = new Scene(grid);
         stage.setTitle("Spectrum Visualizer");
@@ -197,49 +260,143 @@ public class Player extends Application
     private static void showSpectrumScene(
         Stage stage, boolean usesMicrophone, File audioSource, Mixer.Info audioOutput, 
         int readBufferSize, long amplitudeMax, double spectrumSmoothness, 
-        String frequencyMaxString, boolean octaveScale, int octaveParts, boolean decibelScale
+        String frequencyMaxString, boolean octaveScale, int octaveParts, boolean decibelScale,
+        int fftSize, int hopSize, WindowFunction window, boolean perChannel, boolean slidingDft, boolean constantQ,
+        boolean decimate, float microphoneSampleRate, int microphoneSampleSize, int lineBufferSize
     )
     {
         var root = new StackPane();
         var sdl = (audioOutput == null ? null : getAudioOutput(audioOutput));
-        var ias = (usesMicrophone ? getAudioInputFromTDL() : getAudioInputFromFile(audioSource));
+        var source = (usesMicrophone ? getAudioInputFromMicrophone(microphoneSampleRate, microphoneSampleSize, lineBufferSize) : getAudioInputFromFile(audioSource));
         
         var canvas = new Canvas(800.0, 600.0);
         var gc = canvas.getGraphicsContext2D();
         root.getChildren().add(canvas);
 
         float frequencyMax;
-        if (frequencyMaxString.isEmpty()) frequencyMax = ias.getFormat().getSampleRate() / 2; // no frequency max chosen by user
+        if (frequencyMaxString.isEmpty()) frequencyMax = source.getFormat().getSampleRate() / 2; // no frequency max chosen by user
         else frequencyMax = Float.parseFloat(frequencyMaxString);
         double octave = 1.0/octaveParts;
 
+        if (fftSize == 0) fftSize = readBufferSize / source.getFormat().getFrameSize(); // one frame per read buffer
+        if (hopSize == 0 && slidingDft) hopSize = Math.min(fftSize, readBufferSize / source.getFormat().getFrameSize()); // a spectrum per read buffer
+        if (hopSize == 0) hopSize = fftSize; // no overlap
+
         var task = new PlayerTask(
-            sdl, ias, gc, 
-            readBufferSize, amplitudeMax, spectrumSmoothness, 
-            frequencyMax, octaveScale, octave, decibelScale
+            sdl, source,
+            readBufferSize, amplitudeMax,
+            frequencyMax, octaveScale, octave, decibelScale,
+            fftSize, hopSize, window, perChannel, slidingDft, constantQ, decimate,
+            usesMicrophone ? null : audioSource, SpectrumCache.getDefault()
         );
+        // draws the latest spectrum once per frame of the display
+        var renderer = new SpectrumRenderer(
+            gc, task.getDisplayFrames(), task.getChannels(),
+            decibelScale ? 20 * Math.log10(amplitudeMax) : amplitudeMax, spectrumSmoothness,
+            task.getMetrics()
+        );
+        // every analysed frame becomes a column of the waterfall, also frames the renderer skips,
+        // with playback once its audio is heard
+        task.setDisplayListener(renderer.getWaterfall()::write);
         var es = Executors.newSingleThreadExecutor();
 
+        // metrics are written to the file given by the system property jockey.metrics.file
+        // every jockey.metrics.interval milliseconds (default 5000)
+        var metricsFile = System.getProperty("jockey.metrics.file");
+        var metricsExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (metricsFile != null) {
+            task.getMetrics().dumpPeriodically(metricsExecutor, Paths.get(metricsFile), Long.getLong("jockey.metrics.interval", 5000));
+        }
+
+        // the power spectrum averaged over the whole run is written to the file given by jockey.welch.file
+        // every jockey.welch.interval milliseconds (default 60000), not with the constant-Q transform
+        var welchFile = (octaveScale && constantQ ? null : System.getProperty("jockey.welch.file"));
+        var welch = (welchFile != null ? task.accumulate() : null);
+        if (welch != null) welch.dumpPeriodically(metricsExecutor, Paths.get(welchFile), Long.getLong("jockey.welch.interval", 60000));
+
         // user has closed the window
         stage.setOnCloseRequest(e -> {
             if (task.isRunning()) task.cancel();
+            renderer.stop();
+            metricsExecutor.shutdown();
+            if (metricsFile != null) {
+                try {
+                    task.getMetrics().dump(Paths.get(metricsFile)); // final state
+                } catch (IOException ex) {
+                    throw new RuntimeException("metrics could not be written to " + metricsFile, ex);
+                }
+            }
+            if (welch != null) {
+                try {
+                    welch.dump(Paths.get(welchFile)); // final state
+                } catch (IOException ex) {
+                    throw new RuntimeException("averaged spectrum could not be written to " + welchFile, ex);
+                }
+            }
             if (sdl != null) {
                 sdl.drain();
                 sdl.stop();
                 sdl.close();
             }
             try {
-                ias.close();
+                source.close();
             } catch (IOException ex) {
-                throw new RuntimeException("AudioInputStream could not be closed", ex);
+                throw new RuntimeException("audio source could not be closed", ex);
+            }
+            if (source instanceof CaptureAudioSource) {
+                var capture = (CaptureAudioSource) source;
+                if (capture.getOverruns() > 0 || capture.getLineOverruns() > 0)
+                    System.err.printf("input overruns: %d frames dropped, line buffer full %d times%n", capture.getOverruns(), capture.getLineOverruns());
             }
         });
         // song is over
         task.setOnSucceeded(e -> stage.fireEvent(new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST)));
         
+        // seeking within files
+        if (source.isSeekable() && source.getFrameLength() > 0) {
+            var sampleRate = source.getFormat().getSampleRate();
+            var position = new Slider(0, source.getFrameLength() / sampleRate, 0);
+            position.setMaxHeight(Slider.USE_PREF_SIZE);
+            StackPane.setAlignment(position, Pos.BOTTOM_CENTER);
+            root.getChildren().add(position);
+            var following = new SimpleBooleanProperty(false); // value is being set from the playback position
+            position.valueChangingProperty().addListener((ov, wasChanging, changing) -> {
+                if (!changing) task.requestSeek((long) (position.getValue() * sampleRate)); // dragging ended
+            });
+            position.valueProperty().addListener((ov, oldVal, newVal) -> {
+                if (!following.get() && !position.isValueChanging()) task.requestSeek((long) (newVal.doubleValue() * sampleRate)); // clicked
+            });
+
+            // follow the playback position while the user is not dragging the slider
+            var follower = new AnimationTimer() {
+                public void handle(long now) {
+                    if (position.isValueChanging()) return;
+                    following.set(true);
+                    long heard = task.getPlaybackPosition();
+                    position.setValue((heard >= 0 ? heard : task.getFramePosition()) / sampleRate);
+                    following.set(false);
+                }
+            };
+            follower.start();
+            task.runningProperty().addListener((ov, wasRunning, running) -> {
+                if (!running) follower.stop();
+            });
+        }
+
         es.submit(task);
         es.shutdown();
-        stage.setScene(new Scene(root));
+        renderer.start();
+        var scene = new Scene(root);
+        // M toggles the metrics overlay, W switches between bars and waterfall
+        scene.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.M) renderer.setOverlay(!renderer.isOverlay());
+            if (e.getCode() == KeyCode.W) renderer.setWaterfall(!renderer.isWaterfall());
+        });
+        stage.setScene(scene);
     }
 
     private static SourceDataLine getAudioOutput(Mixer.Info mixerInfo)
@@ -257,29 +414,24 @@ public class Player extends Application
         return sdl;
     }
 
-    private static AudioInputStream getAudioInputFromFile(File audioFile)
+    private static AudioSource getAudioInputFromFile(File audioFile)
     {
-        AudioInputStream ias;
+        AudioSource source;
         try {
-            ias = AudioSystem.getAudioInputStream(audioFile);
+            source = AudioSource.open(audioFile); // memory mapped if possible
         } catch (UnsupportedAudioFileException | IOException ex) {
-            throw new RuntimeException("could not obtain AudioInputStream from file " + audioFile, ex);
+            throw new RuntimeException("could not obtain audio source from file " + audioFile, ex);
         }
-        return ias;
+        return source;
     }
 
-    private static AudioInputStream getAudioInputFromTDL()
+    private static AudioSource getAudioInputFromMicrophone(float sampleRate, int sampleSize, int lineBufferSize)
     {
-        var format = new AudioFormat(8000.0f, 16, 1, true, true);
-        TargetDataLine tdl;
         try {
-            tdl = AudioSystem.getTargetDataLine(format);
-            tdl.open();
+            return AudioSource.microphone(sampleRate, sampleSize, lineBufferSize);
         } catch (LineUnavailableException ex) {
             throw new RuntimeException("input line unavailable", ex);
         }
-        tdl.start();
-        return new AudioInputStream(tdl);
     }
 
     public static void main(String[] args)
@@ -1,152 +1,310 @@
 package jockey;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
-import javafx.application.Platform;
 import javafx.concurrent.Task;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
 
+/**
+ * reads the audio, plays it back and analyses it
+ * spectra are handed to the renderer through a {@link FrameExchanger}, so this thread never waits for the display
+ *
+ * with playback, the audio is handed to a {@link PlaybackStage} and this thread analyses up to half a second ahead of
+ * what is heard. spectra then go into a {@link FrameTimeline} instead, from which the display takes the frame of the
+ * audio frame being heard, so playback never waits for the analysis and the display follows the line's clock
+ */
 class PlayerTask extends Task<Void>
 {
-    private static Color SPECTRUM_COLOR = Color.BLUE;
-    private static Color SPECTRUM_GRADIENT_COLOR = Color.CORAL;
-    private static double SPECTRUM_BAR_WIDTH = 1.0; 
-
     private SourceDataLine sdl;
-    private AudioInputStream ias;
-    private GraphicsContext gc;
-    private double[] previous;
+    private AudioSource source;
+    private final FrameExchanger frames;
+    private final FrameTimeline timeline; // null without playback
+    private volatile PlaybackStage playback; // null without playback or while not playing
+    private final PipelineMetrics metrics = new PipelineMetrics();
     private final int readBufferSize;
     private final int playBufferSize;
     private final long amplitudeMax;
-    private final double spectrumSmoothness;
-    private final float frequencyMax;
-    private final boolean octaveScale;
-    private final double octave;
     private final boolean decibelScale;
+    private final int hopSize;
+    private final int decimation;
+    private final WindowFunction window;
+    private final boolean slidingDft;
+    private final FrequencyBinMap binMap;
+    private final ConstantQTransform constantQ; // null unless used instead of the bin map
+    private final int channels;
+    private final File audioFile;
+    private final SpectrumCache cache;
+    private final String parameters;
+    private final AtomicLong seekRequest = new AtomicLong(-1);
+    private volatile long framePosition;
+    private Consumer<double[]> frameListener;
+    private WelchAccumulator accumulator; // null unless averaging
 
     PlayerTask(
-        SourceDataLine sdl, AudioInputStream ias, GraphicsContext gc, 
-        int readBufferSize, long amplitudeMax, double spectrumSmoothness, 
-        float frequencyMax, boolean octaveScale, double octave, boolean decibelScale
+        SourceDataLine sdl, AudioSource source,
+        int readBufferSize, long amplitudeMax,
+        float frequencyMax, boolean octaveScale, double octave, boolean decibelScale,
+        int fftSize, int hopSize, WindowFunction window, boolean perChannel, boolean slidingDft, boolean constantQ, boolean decimate,
+        File audioFile, SpectrumCache cache
     )
     {
         this.sdl = sdl;
-        this.ias = ias;
-        this.gc = gc;
+        this.source = source;
+        this.audioFile = audioFile;
+        this.cache = cache;
         this.readBufferSize = readBufferSize;
         this.playBufferSize = 2 * readBufferSize;
         this.amplitudeMax = amplitudeMax;
-        this.spectrumSmoothness = spectrumSmoothness;
-        this.frequencyMax = frequencyMax;
-        this.octaveScale = octaveScale;
-        this.octave = octave;
         this.decibelScale = decibelScale;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.slidingDft = slidingDft;
+
+        // with decimation, a transform of fftSize/decimation samples at the reduced rate has the bins of fftSize samples
+        float sampleRate = source.getFormat().getSampleRate();
+        decimation = (decimate ? Decimator.factor(sampleRate, frequencyMax, fftSize, hopSize) : 1);
+
+        // "frequency bins" are the bars that are displayed on screen
+        // they are determined by their starting value, and all values >= that and < the next frequency bin will go into that bin
+        binMap = FrequencyBinMap.of(
+            sampleRate / decimation, fftSize / decimation,
+            frequencyMax, octaveScale, octave, false
+        );
+        // the constant-Q transform replaces the octave scale of the bin map
+        this.constantQ = (octaveScale && constantQ ? ConstantQTransform.of(sampleRate / decimation, frequencyMax, octave) : null);
+        int bars = (this.constantQ != null ? this.constantQ.getBars() : binMap.getBars());
+        // either every channel is analysed on its own, or all are averaged into one
+        channels = (perChannel ? source.getFormat().getChannels() : 1);
+        frames = new FrameExchanger(channels * bars);
+
+        // the timeline holds all frames the analysis can be ahead of the line, i.e. of the queued chunks and the line's buffer
+        int framesPerRead = readBufferSize / source.getFormat().getFrameSize();
+        int capacity = (playbackChunks(source.getFormat().getSampleRate(), framesPerRead) + 4) * (framesPerRead / hopSize + 1);
+        timeline = (sdl != null ? new FrameTimeline(channels * bars, capacity, source.getFormat().getSampleRate(), this::getPlaybackPosition) : null);
+        metrics.setFrames(getDisplayFrames());
+
+        // everything the cached spectra depend on, the sliding DFT computes the same spectra as the FFT
+        parameters = String.format(
+            "fft=%d hop=%d window=%s frequencyMax=%s octaveScale=%b octave=%s decibelScale=%b amplitudeMax=%d channels=%d constantQ=%b decimation=%d",
+            fftSize, hopSize, window.name(), frequencyMax, octaveScale, octaveScale ? octave : 0, decibelScale, amplitudeMax, channels, this.constantQ != null, decimation
+        );
     }
 
-    @Override
-    protected Void call() throws LineUnavailableException, IOException
+    /**
+     * the analysed spectra, one magnitude per frequency bin and channel; unused with playback, see {@link #getDisplayFrames}
+     */
+    FrameExchanger getFrames()
     {
-        var format = ias.getFormat();
-        if (sdl != null) { // microphone input, so no speaker output
-            sdl.open(format, playBufferSize);
-            sdl.start();
-        }
+        return frames;
+    }
 
-        int total = 0;
-        byte[] bytes = new byte[readBufferSize];
+    /**
+     * the spectra to display: those of the audio being heard with playback, otherwise the latest
+     */
+    FrameSource getDisplayFrames()
+    {
+        return (timeline != null ? timeline : frames);
+    }
 
-        double step = (format.getSampleRate()/2) / ((readBufferSize/4) * 8 / format.getSampleSizeInBits());
+    /**
+     * timings of the stages of this task and of the renderer drawing its frames
+     */
+    PipelineMetrics getMetrics()
+    {
+        return metrics;
+    }
 
-        // "frequency bins" are the bars that are displayed on screen
-        // they are determined by their starting value, and all values >= that and < the next frequency bin will go into that bin
-        var frequencyBins = SpectrumVisualizer.makeFrequencyBins(
-            frequencyMax, step,
-            octaveScale, octave
-        );
+    /**
+     * the assignment of FFT bins to the bars of every channel, at the decimated sample rate; unused with the constant-Q transform
+     */
+    FrequencyBinMap getBinMap()
+    {
+        return binMap;
+    }
 
-        // loop over the whole audio file or until thread is cancelled
-        while (!isCancelled() && (total < ias.getFrameLength() * format.getFrameSize() || sdl == null)) {
-            int bytesRead = ias.read(bytes, 0, readBufferSize);
-            if (bytesRead == -1) break; // nothing read
+    /**
+     * factor the sample rate is reduced by before the transform, 1 without decimation
+     */
+    int getDecimation()
+    {
+        return decimation;
+    }
 
-            var doubles = processAudioData(format, bytes);
-            displaySpectrum(doubles, step, frequencyBins, frequencyMax);
+    /**
+     * starting frequency of every bar of one channel
+     */
+    double[] getFrequencies()
+    {
+        return (constantQ != null ? constantQ.getFrequencies() : binMap.getFrequencies());
+    }
 
-            total += bytesRead;
-            if (sdl != null) sdl.write(bytes, 0, readBufferSize); // same as above
-        }
-        return null;
+    /**
+     * additionally hand every frame to the listener, on this task's thread and before it is published
+     * the listener must neither block nor keep the array
+     */
+    void setFrameListener(Consumer<double[]> frameListener)
+    {
+        this.frameListener = frameListener;
     }
 
     /**
-     * convert byte array into double array suitable for processing by the FFT
+     * average the power spectrum of every channel over all frames from now on, for the whole run, see {@link WelchAccumulator}
+     * to be called before the task runs; cached spectra are not used then, as they only hold the bars
+     * @return the averaged spectrum, which can be read while the task runs
      */
-    private static double[] processAudioData(AudioFormat format, byte[] bytes)
+    WelchAccumulator accumulate()
     {
-        var bo = (format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        if (constantQ != null) throw new IllegalStateException("the averaged spectrum needs the FFT, not the constant-Q transform");
+        if (accumulator == null) accumulator = new WelchAccumulator(channels, FrameAnalyzer.accumulatedBins(binMap), binMap.getStep());
+        return accumulator;
+    }
 
-        var sBuf = ByteBuffer.wrap(bytes).order(bo).asShortBuffer();
-        var shorts = new short[sBuf.capacity()];
-        sBuf.get(shorts);
+    /**
+     * hand every frame to the listener when it is due on screen: with playback on the display's thread once its
+     * audio is heard (see {@link FrameTimeline#setFrameListener}), otherwise as the frame listener on this task's thread
+     */
+    void setDisplayListener(Consumer<double[]> listener)
+    {
+        if (timeline != null) timeline.setFrameListener(listener);
+        else setFrameListener(listener);
+    }
 
-        var doubles = new double[shorts.length / format.getChannels()];
-        for (int i = 0; i < shorts.length / format.getChannels(); i++) {
-            // average channels together
-            for (int j = 0; j < format.getChannels(); j++) { 
-                doubles[i] += (double) shorts[i+j]; 
-            }
-            doubles[i] /= format.getChannels();
-        }
-        return doubles;
+    /**
+     * number of channels in every frame, 1 if the channels are averaged
+     */
+    int getChannels()
+    {
+        return channels;
     }
 
     /**
-     * display the spectrum on screen given an array of samples
+     * jump to the given audio frame, takes effect before the next read
      */
-    private void displaySpectrum(double[] doubles, double step, double[] frequencyBins, float frequencyMax)
+    void requestSeek(long frame)
     {
-        var magnitudes = SpectrumVisualizer.getSpectrum(
-            doubles, step,
-            true, frequencyBins, 
-            decibelScale, amplitudeMax, 
-            frequencyMax
-        );
-        drawSpectrumBars(decibelScale ? 20 * Math.log10(amplitudeMax) : amplitudeMax, magnitudes);
+        seekRequest.set(Math.max(0, frame));
+    }
+
+    /**
+     * position of the audio frame that is read next
+     */
+    long getFramePosition()
+    {
+        return framePosition;
+    }
+
+    /**
+     * position of the audio frame being heard, -1 without playback or before it has started
+     */
+    long getPlaybackPosition()
+    {
+        var playback = this.playback;
+        return (playback != null ? playback.getPosition() : -1);
     }
 
     /**
-     * draw the bars of the spectrum given the results of the FFT
+     * chunks of one read buffer queued for playback, enough for half a second
      */
-    private void drawSpectrumBars(double amplitudeMax, double[] magnitudes)
-    {
-        var canvas = gc.getCanvas();
-        Platform.runLater(() -> gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight()));
-
-        double barWidth = canvas.getWidth() / magnitudes.length * SPECTRUM_BAR_WIDTH;
-
-        Platform.runLater(() -> { // ui changes have to be executed on the javafx application thread
-            for (int i = 0; i < magnitudes.length; i++) {
-                if (previous != null) // smooth spectrum
-                    magnitudes[i] = 1/spectrumSmoothness * (magnitudes[i] + (spectrumSmoothness-1) * previous[i]);
-    
-                if (SPECTRUM_GRADIENT_COLOR != null) // add a color gradient
-                    gc.setFill(SPECTRUM_COLOR.interpolate(SPECTRUM_GRADIENT_COLOR, Math.pow(magnitudes[i]/amplitudeMax, 1.0/3)));
-                else gc.setFill(SPECTRUM_COLOR);
-    
-                double barHeight = magnitudes[i] / amplitudeMax * canvas.getHeight();
-                if (barHeight > canvas.getHeight()-1) barHeight = canvas.getHeight() - 1; // magnitude greater than maximum amplitude
-                gc.fillRect(i*barWidth, canvas.getHeight()-1 - barHeight, barWidth, barHeight);
+    private static int playbackChunks(float sampleRate, int framesPerRead)
+    {
+        return Math.max(4, (int) Math.ceil(sampleRate / 2 / framesPerRead));
+    }
+
+    @Override
+    protected Void call() throws LineUnavailableException, IOException
+    {
+        var format = source.getFormat();
+        int framesPerRead = readBufferSize / format.getFrameSize();
+        PlaybackStage playback = null;
+        if (sdl != null) { // microphone input, so no speaker output
+            sdl.open(format, playBufferSize);
+            sdl.start();
+            playback = this.playback = new PlaybackStage(sdl, framesPerRead * format.getFrameSize(), playbackChunks(format.getSampleRate(), framesPerRead), metrics);
+        }
+
+        double[][] samples = new double[channels][framesPerRead];
+
+        // frames for the FFT are cut from the stream independently of the read buffer size
+        // all buffers are allocated here, the loop below allocates nothing per frame
+        var analyzer = new FrameAnalyzer(channels, framesPerRead, hopSize, decimation, window, slidingDft, binMap, constantQ, decibelScale, amplitudeMax, metrics);
+        analyzer.setAccumulator(accumulator);
+
+        // spectra of files analysed before with the same parameters are taken from the cache,
+        // otherwise they are written to it while analysing
+        SpectrumCache.Entry cached = null;
+        SpectrumCache.Writer writer = null;
+        if (cache != null && audioFile != null && accumulator == null) {
+            var key = SpectrumCache.key(audioFile, parameters);
+            cached = cache.open(key);
+            if (cached != null && cached.getBars() != frames.getFrameLength()) cached = null;
+            if (cached == null) writer = cache.create(key, frames.getFrameLength());
+        }
+
+        try (analyzer) {
+            long frame = 0;
+
+            // loop over the whole audio file or until thread is cancelled
+            while (!isCancelled()) {
+                long seek = seekRequest.getAndSet(-1);
+                if (seek >= 0 && source.isSeekable()) {
+                    // align to the hop size, so frame numbers stay those of an analysis from the start
+                    long target = Math.min(seek, Math.max(0, source.getFrameLength() - 1)) / hopSize * hopSize;
+                    source.seek(target);
+                    framePosition = target;
+                    analyzer.reset();
+                    frame = target / hopSize;
+                    if (playback != null) playback.discard(); // drop audio of the old position
+                    if (writer != null) { // the entry would have a gap or repeated frames, so it is not cached
+                        writer.close();
+                        writer = null;
+                    }
+                }
+
+                // raw bytes are only needed for playback, and are read straight into its next chunk
+                var raw = (playback != null ? playback.writeBuffer() : null);
+                long start = System.nanoTime();
+                int framesRead = (channels == 1
+                    ? source.read(raw, samples[0], 0, framesPerRead)
+                    : source.readChannels(raw, samples, 0, framesPerRead));
+                if (framesRead == -1) break; // end of audio
+                metrics.record(PipelineMetrics.Stage.READ, start);
+                long position = framePosition;
+                framePosition += framesRead;
+
+                long cachedFrames = (cached != null ? cached.getFrames() : 0);
+                int completed = analyzer.process(samples, framesRead, frame, cachedFrames);
+                for (int k = 0; k < completed; k++, frame++) {
+                    start = System.nanoTime();
+                    var out = (timeline != null ? timeline.writeBuffer() : frames.writeBuffer());
+                    if (frame < cachedFrames) {
+                        cached.read(frame, out);
+                        metrics.frameCached();
+                    } else {
+                        analyzer.copyFrame(k, out);
+                        if (writer != null) writer.append(out);
+                        metrics.frameAnalysed();
+                    }
+                    if (frameListener != null) frameListener.accept(out);
+                    // a frame belongs to the center of its window, which ends hopSize after the start of the previous one
+                    if (timeline != null) timeline.publish((frame + 1) * hopSize - analyzer.getFrameSize() / 2);
+                    else frames.publish();
+                    metrics.record(PipelineMetrics.Stage.PUBLISH, start);
+                }
+
+                // the frames of a chunk are published before it is played
+                if (playback != null) playback.publish(framesRead * format.getFrameSize(), position);
             }
-            previous = magnitudes;
-        });
+            if (playback != null && !isCancelled()) playback.finish(); // the line has all audio
+            if (writer != null && !isCancelled()) writer.commit(); // only complete analyses are cached
+        } finally {
+            if (writer != null) writer.close();
+            if (playback != null) playback.close();
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
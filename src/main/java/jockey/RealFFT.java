@@ -0,0 +1,162 @@
+package jockey;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FFT of a real signal of length N, computed by packing it into a complex signal of length N/2
+ * only the N/2+1 non-redundant bins are produced, the others are their complex conjugates
+ * N can be any length, see {@link FFT}, odd lengths cannot be packed and use a complex FFT of length N
+ * @author jockey
+ */
+public class RealFFT
+{
+    private static final Map<Integer, RealFFT> PLANS = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final FFT half;
+    private final FFT full; // odd sizes only
+    private final ThreadLocal<double[][]> scratch; // odd sizes only
+    private final double[] cos, sin;
+    private final float[] cosFloat, sinFloat;
+
+    private RealFFT(int size)
+    {
+        if (size < 1) throw new IllegalArgumentException("real FFT size must be positive, got " + size);
+        this.size = size;
+        half = (size % 2 == 0 ? FFT.forSize(size / 2) : null);
+        full = (size % 2 == 0 ? null : FFT.forSize(size));
+        scratch = (size % 2 == 0 ? null : ThreadLocal.withInitial(() -> new double[2][size]));
+
+        cos = new double[size / 4 + 1];
+        sin = new double[size / 4 + 1];
+        cosFloat = new float[size / 4 + 1];
+        sinFloat = new float[size / 4 + 1];
+        for (int k = 0; k <= size / 4; k++) {
+            cos[k] = Math.cos(-2*Math.PI * k/size);
+            sin[k] = Math.sin(-2*Math.PI * k/size);
+            cosFloat[k] = (float) cos[k];
+            sinFloat[k] = (float) sin[k];
+        }
+    }
+
+    /**
+     * get the (cached) transform for the given size
+     */
+    public static RealFFT forSize(int size)
+    {
+        return PLANS.computeIfAbsent(size, RealFFT::new);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * number of bins produced by {@link #transform(double[], double[], double[])}
+     */
+    public int bins()
+    {
+        return size / 2 + 1;
+    }
+
+    /**
+     * transform the first {@link #size()} samples of x, writing bins 0 to N/2 into re and im
+     * re and im have to be at least {@link #bins()} long, x is left untouched
+     */
+    public void transform(double[] x, double[] re, double[] im)
+    {
+        if (full != null) {
+            var s = scratch.get();
+            System.arraycopy(x, 0, s[0], 0, size);
+            Arrays.fill(s[1], 0);
+            full.transform(s[0], s[1]);
+            System.arraycopy(s[0], 0, re, 0, bins());
+            System.arraycopy(s[1], 0, im, 0, bins());
+            return;
+        }
+        int M = size / 2;
+
+        // even samples become the real parts, odd samples the imaginary parts
+        for (int m = 0; m < M; m++) {
+            re[m] = x[2*m];
+            im[m] = x[2*m + 1];
+        }
+        half.transform(re, im);
+
+        // split the packed spectrum Z into the spectra of the even (E) and odd (O) samples,
+        // then X[k] = E[k] + W^k O[k] and X[M-k] = conj(E[k] - W^k O[k])
+        double z0r = re[0], z0i = im[0];
+        re[0] = z0r + z0i;
+        im[0] = 0;
+        re[M] = z0r - z0i;
+        im[M] = 0;
+        for (int k = 1; k <= M / 2; k++) {
+            int j = M - k;
+            double zr = re[k], zi = im[k];
+            double cr = re[j], ci = -im[j];
+
+            double er = (zr + cr) / 2, ei = (zi + ci) / 2;
+            double or = (zi - ci) / 2, oi = (cr - zr) / 2;
+
+            double tr = cos[k]*or - sin[k]*oi;
+            double ti = cos[k]*oi + sin[k]*or;
+
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            re[j] = er - tr;
+            im[j] = ti - ei;
+        }
+    }
+
+    /**
+     * single precision version of {@link #transform(double[], double[], double[])}
+     */
+    public void transform(float[] x, float[] re, float[] im)
+    {
+        if (full != null) {
+            var s = scratch.get();
+            for (int i = 0; i < size; i++) {
+                s[0][i] = x[i];
+                s[1][i] = 0;
+            }
+            full.transform(s[0], s[1]);
+            for (int k = 0; k < bins(); k++) {
+                re[k] = (float) s[0][k];
+                im[k] = (float) s[1][k];
+            }
+            return;
+        }
+        int M = size / 2;
+
+        for (int m = 0; m < M; m++) {
+            re[m] = x[2*m];
+            im[m] = x[2*m + 1];
+        }
+        half.transform(re, im);
+
+        float z0r = re[0], z0i = im[0];
+        re[0] = z0r + z0i;
+        im[0] = 0;
+        re[M] = z0r - z0i;
+        im[M] = 0;
+        for (int k = 1; k <= M / 2; k++) {
+            int j = M - k;
+            float zr = re[k], zi = im[k];
+            float cr = re[j], ci = -im[j];
+
+            float er = (zr + cr) / 2, ei = (zi + ci) / 2;
+            float or = (zi - ci) / 2, oi = (cr - zr) / 2;
+
+            float tr = cosFloat[k]*or - sinFloat[k]*oi;
+            float ti = cosFloat[k]*oi + sinFloat[k]*or;
+
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            re[j] = er - tr;
+            im[j] = ti - ei;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package jockey;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * delivers the frames of another source no faster than they would be played back
+ * used instead of the audio output for pacing when a file is analysed without being played
+ * @author jockey
+ */
+public class RealTimeAudioSource implements AudioSource
+{
+    private final AudioSource source;
+    private final double nanosPerFrame;
+    private long start = -1; // System.nanoTime at which frame 0 of the current run is due
+    private long delivered;
+
+    public RealTimeAudioSource(AudioSource source)
+    {
+        this.source = source;
+        this.nanosPerFrame = 1e9 / source.getFormat().getFrameRate();
+    }
+
+    /**
+     * wait until the next frame is due
+     */
+    private void pace()
+    {
+        long now = System.nanoTime();
+        if (start < 0) start = now;
+        long due = start + (long) (delivered * nanosPerFrame);
+        while (now < due) {
+            LockSupport.parkNanos(due - now);
+            now = System.nanoTime();
+        }
+    }
+
+    @Override
+    public int read(byte[] bytes, double[] samples, int offset, int frames) throws IOException
+    {
+        pace();
+        int framesRead = source.read(bytes, samples, offset, frames);
+        if (framesRead > 0) delivered += framesRead;
+        return framesRead;
+    }
+
+    @Override
+    public int readChannels(byte[] bytes, double[][] samples, int offset, int frames) throws IOException
+    {
+        pace();
+        int framesRead = source.readChannels(bytes, samples, offset, frames);
+        if (framesRead > 0) delivered += framesRead;
+        return framesRead;
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return source.getFormat();
+    }
+
+    @Override
+    public long getFrameLength()
+    {
+        return source.getFrameLength();
+    }
+
+    @Override
+    public boolean isSeekable()
+    {
+        return source.isSeekable();
+    }
+
+    /**
+     * playback continues in real time from the new position
+     */
+    @Override
+    public void seek(long frame) throws IOException
+    {
+        source.seek(frame);
+        start = -1;
+        delivered = 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        source.close();
+    }
+}
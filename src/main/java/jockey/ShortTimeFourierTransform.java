@@ -0,0 +1,122 @@
+package jockey;
+
+import java.util.Arrays;
+
+/**
+ * streaming stage that cuts a continuous signal into overlapping, windowed frames for the FFT
+ * the frame size (frequency resolution) and the hop size (frame rate) are independent of each other
+ * and of the size of the chunks the signal arrives in
+ *
+ * usage:
+ * <pre>
+ * int offset = 0;
+ * while (offset &lt; length) {
+ *     offset += stft.write(samples, offset, length - offset);
+ *     if (stft.hasFrame()) process(stft.takeFrame());
+ * }
+ * </pre>
+ * @author jockey
+ */
+public class ShortTimeFourierTransform
+{
+    private final int fftSize;
+    private final int hopSize;
+    private final double[] window;
+
+    // every sample is stored twice, at i and i+fftSize, so the latest fftSize samples
+    // always form one contiguous run starting at position and never have to be rearranged
+    private final double[] ring;
+    private int position;
+    private int untilFrame;
+    private boolean frameReady;
+    private final double[] frame;
+
+    public ShortTimeFourierTransform(int fftSize, int hopSize, WindowFunction window)
+    {
+        if (fftSize < 2)
+            throw new IllegalArgumentException("FFT size must be at least 2, got " + fftSize);
+        if (hopSize < 1)
+            throw new IllegalArgumentException("hop size must be positive, got " + hopSize);
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window.coefficients(fftSize);
+        ring = new double[2 * fftSize];
+        frame = new double[fftSize];
+        untilFrame = hopSize;
+    }
+
+    /**
+     * forget all samples, e.g. after jumping to another position of the audio
+     */
+    public void reset()
+    {
+        Arrays.fill(ring, 0);
+        position = 0;
+        untilFrame = hopSize;
+        frameReady = false;
+    }
+
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+
+    public int getHopSize()
+    {
+        return hopSize;
+    }
+
+    /**
+     * append up to length samples, stopping early as soon as a frame is complete
+     * @return the number of samples consumed
+     */
+    public int write(double[] samples, int offset, int length)
+    {
+        if (frameReady) return 0; // previous frame has not been taken yet
+
+        int n = Math.min(length, untilFrame);
+        for (int i = 0; i < n; i++) {
+            double s = samples[offset + i];
+            ring[position] = s;
+            ring[position + fftSize] = s;
+            if (++position == fftSize) position = 0;
+        }
+
+        untilFrame -= n;
+        if (untilFrame == 0) {
+            frameReady = true;
+            untilFrame = hopSize;
+        }
+        return n;
+    }
+
+    public boolean hasFrame()
+    {
+        return frameReady;
+    }
+
+    /**
+     * drop the complete frame without windowing it, e.g. because its spectrum is already known
+     */
+    public void skipFrame()
+    {
+        if (!frameReady) throw new IllegalStateException("no frame available");
+        frameReady = false;
+    }
+
+    /**
+     * window the latest fftSize samples into the frame buffer and return it
+     * the buffer is reused, its contents are only valid until the next call
+     */
+    public double[] takeFrame()
+    {
+        if (!frameReady) throw new IllegalStateException("no frame available");
+        frameReady = false;
+
+        // oldest sample is at position, newest at position+fftSize-1
+        for (int i = 0; i < fftSize; i++) {
+            frame[i] = ring[position + i] * window[i];
+        }
+        return frame;
+    }
+}
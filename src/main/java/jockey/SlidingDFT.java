@@ -0,0 +1,167 @@
+package jockey;
+
+import java.util.Arrays;
+
+/**
+ * streaming spectrum that is updated with every new sample instead of transforming a whole frame
+ * the DFT of the latest size samples is kept for the lowest bins only (e.g. those up to the frequency max of a
+ * {@link FrequencyBinMap}), and every sample updates each of them in constant time:
+ * X[k] = (X[k] + x[new] - x[oldest]) * e^(2 pi i k/size)
+ *
+ * a spectrum is therefore available after any number of samples, at a cost that does not depend on the hop size,
+ * which makes small hops (and the short read buffers of live input) cheap. the window is applied in the frequency
+ * domain by convolving neighbouring bins with the cosine terms of the window, see {@link WindowFunction#getTerms()},
+ * so the result is the same as that of {@link ShortTimeFourierTransform} and {@link RealFFT} with the same window.
+ *
+ * the sums are updated in double precision from exact differences of samples, so rounding errors only grow with the
+ * error of the rotation, by less than 1e-6 relative to the spectrum after a week of continuous input at 8000 Hz
+ *
+ * it is used like {@link ShortTimeFourierTransform}, a frame being complete after every hop size samples
+ * @author jockey
+ */
+public class SlidingDFT
+{
+    private final int size;
+    private final int hopSize;
+    private final int bins;
+    private final int tracked;
+    private final double[] kernel; // weight of the bins at distance 0, 1, ... in the windowed spectrum
+    private final double[] cos, sin;
+    private final double[] re, im;
+    private final double[] ring;
+    private int position;
+    private int untilFrame;
+    private boolean frameReady;
+
+    /**
+     * @param size number of samples the spectrum is taken over, as the FFT size of a frame
+     * @param bins number of bins computed, starting with bin 0, at most size/2+1
+     */
+    public SlidingDFT(int size, int hopSize, WindowFunction window, int bins)
+    {
+        if (size < 2)
+            throw new IllegalArgumentException("DFT size must be at least 2, got " + size);
+        if (hopSize < 1)
+            throw new IllegalArgumentException("hop size must be positive, got " + hopSize);
+        if (bins < 1 || bins > size/2 + 1)
+            throw new IllegalArgumentException("bins must be between 1 and " + (size/2 + 1) + ", got " + bins);
+        this.size = size;
+        this.hopSize = hopSize;
+        this.bins = bins;
+
+        // w[n] = a0 - a1 cos(t) + a2 cos(2t) - a3 cos(3t) turns into X[k] a0 - (X[k-1] + X[k+1]) a1/2 + ...
+        var terms = window.getTerms();
+        int width = terms.length;
+        while (width > 1 && terms[width-1] == 0) width--;
+        kernel = new double[width];
+        kernel[0] = terms[0];
+        for (int m = 1; m < width; m++) kernel[m] = (m % 2 == 0 ? 1 : -1) * terms[m] / 2;
+
+        // bins above the last one are needed for the window, those below 0 are the conjugates of those above
+        tracked = bins + width - 1;
+        cos = new double[tracked];
+        sin = new double[tracked];
+        for (int k = 0; k < tracked; k++) {
+            cos[k] = Math.cos(2*Math.PI * k/size);
+            sin[k] = Math.sin(2*Math.PI * k/size);
+        }
+        re = new double[tracked];
+        im = new double[tracked];
+        ring = new double[size];
+        untilFrame = hopSize;
+    }
+
+    /**
+     * forget all samples, e.g. after jumping to another position of the audio
+     */
+    public void reset()
+    {
+        Arrays.fill(re, 0);
+        Arrays.fill(im, 0);
+        Arrays.fill(ring, 0);
+        position = 0;
+        untilFrame = hopSize;
+        frameReady = false;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getHopSize()
+    {
+        return hopSize;
+    }
+
+    public int getBins()
+    {
+        return bins;
+    }
+
+    /**
+     * add up to length samples, stopping early as soon as a frame is complete
+     * @return the number of samples consumed
+     */
+    public int write(double[] samples, int offset, int length)
+    {
+        if (frameReady) return 0; // previous frame has not been taken yet
+
+        int n = Math.min(length, untilFrame);
+        for (int i = 0; i < n; i++) {
+            double s = samples[offset + i];
+            double delta = s - ring[position];
+            ring[position] = s;
+            if (++position == size) position = 0;
+
+            for (int k = 0; k < tracked; k++) {
+                double t = re[k] + delta, u = im[k];
+                re[k] = t*cos[k] - u*sin[k];
+                im[k] = t*sin[k] + u*cos[k];
+            }
+        }
+
+        untilFrame -= n;
+        if (untilFrame == 0) {
+            frameReady = true;
+            untilFrame = hopSize;
+        }
+        return n;
+    }
+
+    public boolean hasFrame()
+    {
+        return frameReady;
+    }
+
+    /**
+     * drop the complete frame without computing its spectrum
+     */
+    public void skipFrame()
+    {
+        if (!frameReady) throw new IllegalStateException("no frame available");
+        frameReady = false;
+    }
+
+    /**
+     * write the windowed spectrum of the latest size samples into bins 0 to bins-1 of outRe and outIm,
+     * in the same scale as {@link RealFFT#transform(double[], double[], double[])}
+     */
+    public void takeSpectrum(double[] outRe, double[] outIm)
+    {
+        if (!frameReady) throw new IllegalStateException("no frame available");
+        frameReady = false;
+
+        for (int k = 0; k < bins; k++) {
+            double sumRe = kernel[0] * re[k], sumIm = kernel[0] * im[k];
+            for (int m = 1; m < kernel.length; m++) {
+                int below = k - m;
+                double belowRe = re[Math.abs(below)], belowIm = (below < 0 ? -im[-below] : im[below]);
+                sumRe += kernel[m] * (belowRe + re[k+m]);
+                sumIm += kernel[m] * (belowIm + im[k+m]);
+            }
+            outRe[k] = sumRe;
+            outIm[k] = sumIm;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package jockey;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * persistent cache of analysed spectra, one file per audio file and set of analysis parameters
+ * an entry is keyed by a hash of the audio file's contents and the parameters, so renamed or copied files still hit the cache
+ * entries are read through a memory mapping, the least recently used ones are deleted when the cache grows over its size limit
+ *
+ * entry format (big endian): int magic 'SPCC', int number of bars, long number of frames, then float magnitudes frame by frame
+ * @author jockey
+ */
+public class SpectrumCache
+{
+    private static final int MAGIC = 0x53504343; // "SPCC"
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final String SUFFIX = ".spc";
+    private static final int HASH_CHUNK = 1 << 26;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public SpectrumCache(Path directory, long maxBytes)
+    {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * cache in the directory given by the system property jockey.cache.dir (default ~/.spectrum-visualizer/cache),
+     * limited to jockey.cache.maxBytes bytes (default 1 GiB), or null if that limit is 0
+     */
+    public static SpectrumCache getDefault()
+    {
+        long maxBytes = Long.getLong("jockey.cache.maxBytes", 1L << 30);
+        if (maxBytes <= 0) return null;
+        var directory = System.getProperty("jockey.cache.dir", Paths.get(System.getProperty("user.home"), ".spectrum-visualizer", "cache").toString());
+        return new SpectrumCache(Paths.get(directory), maxBytes);
+    }
+
+    /**
+     * hash the contents of the audio file together with a description of the analysis parameters
+     */
+    public static String key(File audioFile, String parameters) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+        try (var channel = FileChannel.open(audioFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_CHUNK, size - position)));
+            }
+        }
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+        var hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private Path path(String key)
+    {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * open the entry for the given key, or return null if there is none
+     */
+    public Entry open(String key) throws IOException
+    {
+        var path = path(key);
+        if (!Files.isRegularFile(path)) return null;
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis())); // mark as recently used
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC) return null;
+            var entry = new Entry(map);
+            if (map.capacity() < HEADER_SIZE + 4L * entry.bars * entry.frames) return null; // truncated
+            return entry;
+        }
+    }
+
+    /**
+     * start writing a new entry for the given key, it only becomes visible once it is committed
+     */
+    public Writer create(String key, int bars) throws IOException
+    {
+        Files.createDirectories(directory);
+        return new Writer(key, bars);
+    }
+
+    /**
+     * delete least recently used entries until the cache fits into its size limit
+     */
+    private void evict() throws IOException
+    {
+        var entries = new ArrayList<Path>();
+        long total = 0;
+        try (var files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (var file : files) {
+                entries.add(file);
+                total += Files.size(file);
+            }
+        }
+        entries.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (var file : entries) {
+            if (total <= maxBytes) break;
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * a stored spectrogram
+     */
+    public static class Entry
+    {
+        private final MappedByteBuffer map;
+        private final int bars;
+        private final long frames;
+
+        private Entry(MappedByteBuffer map)
+        {
+            this.map = map;
+            bars = map.getInt(4);
+            frames = map.getLong(8);
+        }
+
+        public int getBars()
+        {
+            return bars;
+        }
+
+        public long getFrames()
+        {
+            return frames;
+        }
+
+        /**
+         * copy the magnitudes of a frame into out
+         */
+        public void read(long frame, double[] out)
+        {
+            int position = (int) (HEADER_SIZE + 4L * bars * frame);
+            for (int b = 0; b < bars; b++) out[b] = map.getFloat(position + 4*b);
+        }
+    }
+
+    /**
+     * writes a new entry frame by frame into a temporary file, which replaces the entry on {@link #commit()}
+     * closing without committing discards it, e.g. if the analysis was cancelled
+     */
+    public class Writer implements Closeable
+    {
+        private final Path path;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int bars;
+        private final long maxFrames;
+        private long frames;
+        private boolean full;
+
+        private Writer(String key, int bars) throws IOException
+        {
+            this.bars = bars;
+            path = path(key);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE, 4 * bars) * 256);
+            buffer.putInt(MAGIC).putInt(bars).putLong(0);
+            // entries are mapped as a whole, so they can neither exceed the cache nor a single mapping
+            maxFrames = (Math.min(maxBytes, Integer.MAX_VALUE) - HEADER_SIZE) / (4L * bars);
+        }
+
+        /**
+         * append the magnitudes of the next frame
+         */
+        public void append(double[] magnitudes) throws IOException
+        {
+            if (full || frames == maxFrames) {
+                full = true; // too large to be cached
+                return;
+            }
+            if (buffer.remaining() < 4 * bars) flush();
+            for (int b = 0; b < bars; b++) buffer.putFloat((float) magnitudes[b]);
+            frames++;
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * store the entry, evicting old entries if necessary
+         */
+        public void commit() throws IOException
+        {
+            if (full) return;
+            flush();
+            buffer.putLong(0, frames).limit(8);
+            channel.write(buffer, 8);
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
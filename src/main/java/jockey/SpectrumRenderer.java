@@ -0,0 +1,167 @@
+package jockey;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * draws the latest spectrum once per display pulse, frames published in between are skipped
+ * (with playback, the latest is the frame of the audio being heard, see {@link FrameTimeline})
+ * frames with several channels are drawn as one spectrum per channel, stacked on top of each other
+ * the bars are drawn into a pixel array (see {@link BarRaster}) and uploaded as one image per frame,
+ * instead of one fill per bar
+ * the time taken to draw and the time from publishing to drawing a frame are recorded into the metrics,
+ * which can also be drawn over the spectrum
+ * instead of the bars, a waterfall of the latest frames can be shown (see {@link WaterfallRaster}), which is written
+ * as frames are due on screen (by the analysis thread, or with playback as their audio is heard) and only has its
+ * new columns uploaded on every pulse
+ * all other state is only touched on the JavaFX application thread
+ * @author jockey
+ */
+class SpectrumRenderer extends AnimationTimer
+{
+    private static Color SPECTRUM_COLOR = Color.BLUE;
+    private static Color SPECTRUM_GRADIENT_COLOR = Color.CORAL;
+    private static double SPECTRUM_BAR_WIDTH = 1.0; 
+    private static int[] SPECTRUM_GRADIENT = BarRaster.makeGradient(SPECTRUM_COLOR, SPECTRUM_GRADIENT_COLOR, 256);
+    private static int[] WATERFALL_GRADIENT = BarRaster.makeGradient(Color.BLACK, SPECTRUM_GRADIENT_COLOR, 256);
+    private static Color OVERLAY_COLOR = Color.DIMGRAY;
+    private static Font OVERLAY_FONT = Font.font("Monospaced", 11);
+
+    private final GraphicsContext gc;
+    private final FrameSource frames;
+    private final int channels;
+    private final double amplitudeMax;
+    private final double spectrumSmoothness;
+    private final double[] previous;
+    private final PipelineMetrics metrics;
+    private BarRaster raster;
+    private WritableImage image;
+    private final WaterfallRaster waterfall;
+    private final WritableImage waterfallImage;
+    private long uploaded; // columns of the waterfall uploaded to its image
+    private boolean first = true;
+    private boolean overlay;
+    private boolean waterfallShown;
+
+    SpectrumRenderer(GraphicsContext gc, FrameSource frames, int channels, double amplitudeMax, double spectrumSmoothness, PipelineMetrics metrics)
+    {
+        this.gc = gc;
+        this.frames = frames;
+        this.channels = channels;
+        this.amplitudeMax = amplitudeMax;
+        this.spectrumSmoothness = spectrumSmoothness;
+        this.previous = new double[frames.getFrameLength()];
+        this.metrics = metrics;
+
+        var canvas = gc.getCanvas();
+        int width = (int) canvas.getWidth(), height = (int) canvas.getHeight();
+        waterfall = new WaterfallRaster(width, height, channels, frames.getFrameLength() / channels, amplitudeMax, WATERFALL_GRADIENT);
+        waterfallImage = new WritableImage(width, height);
+    }
+
+    /**
+     * the waterfall, every analysed frame has to be written to it, e.g. as display listener of the {@link PlayerTask}
+     */
+    WaterfallRaster getWaterfall()
+    {
+        return waterfall;
+    }
+
+    /**
+     * show the waterfall instead of the bars
+     */
+    void setWaterfall(boolean waterfallShown)
+    {
+        this.waterfallShown = waterfallShown;
+    }
+
+    boolean isWaterfall()
+    {
+        return waterfallShown;
+    }
+
+    /**
+     * show or hide the metrics over the spectrum
+     */
+    void setOverlay(boolean overlay)
+    {
+        this.overlay = overlay;
+    }
+
+    boolean isOverlay()
+    {
+        return overlay;
+    }
+
+    @Override
+    public void handle(long now)
+    {
+        var magnitudes = frames.latest();
+        if (magnitudes == null) return; // no new frame since the last pulse
+        long start = System.nanoTime();
+        metrics.getLatency().record(start - frames.getTimestamp());
+
+        for (int i = 0; i < magnitudes.length; i++) {
+            if (first) previous[i] = magnitudes[i];
+            else previous[i] = 1/spectrumSmoothness * (magnitudes[i] + (spectrumSmoothness-1) * previous[i]); // smooth spectrum
+        }
+        first = false;
+        if (waterfallShown) drawWaterfall();
+        else drawSpectrumBars(previous);
+        if (overlay) {
+            gc.setFill(OVERLAY_COLOR);
+            gc.setFont(OVERLAY_FONT);
+            gc.fillText(metrics.overlay(), 8, 16);
+        }
+
+        metrics.frameRendered();
+        metrics.record(PipelineMetrics.Stage.RENDER, start);
+    }
+
+    /**
+     * upload the columns written since the last pulse and draw the ring of columns with the oldest on the left
+     * the columns are drawn from the image in place, in two parts if the ring wraps around
+     */
+    private void drawWaterfall()
+    {
+        int width = waterfall.getWidth(), height = waterfall.getHeight();
+        long columns = waterfall.getColumns();
+        long from = Math.max(uploaded, columns - width);
+        var format = PixelFormat.getIntArgbPreInstance();
+        while (from < columns) {
+            int x = (int) (from % width);
+            int n = (int) Math.min(columns - from, width - x);
+            waterfallImage.getPixelWriter().setPixels(x, 0, n, height, format, waterfall.getPixels(), x, width);
+            from += n;
+        }
+        uploaded = columns;
+
+        int start = (int) (columns % width);
+        gc.clearRect(0, 0, width, height);
+        gc.drawImage(waterfallImage, start, 0, width - start, height, 0, 0, width - start, height);
+        if (start > 0) gc.drawImage(waterfallImage, 0, 0, start, height, width - start, 0, start, height);
+    }
+
+    /**
+     * draw the bars of the spectrum given the results of the FFT, one strip per channel
+     */
+    private void drawSpectrumBars(double[] magnitudes)
+    {
+        var canvas = gc.getCanvas();
+        int width = (int) canvas.getWidth(), height = (int) canvas.getHeight();
+        if (raster == null || raster.getWidth() != width || raster.getHeight() != height) { // first frame or resized
+            raster = new BarRaster(width, height, SPECTRUM_GRADIENT, SPECTRUM_BAR_WIDTH);
+            image = new WritableImage(width, height);
+        }
+        raster.draw(magnitudes, channels, amplitudeMax);
+
+        // pixels are either opaque or fully transparent, so they are the same premultiplied, which uploads without conversion
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), raster.getPixels(), 0, width);
+        gc.clearRect(0, 0, width, height);
+        gc.drawImage(image, 0, 0);
+    }
+}
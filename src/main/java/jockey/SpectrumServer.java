@@ -0,0 +1,358 @@
+package jockey;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * serves analysed spectra to any number of clients over TCP, so one analysis can be shown on many screens
+ *
+ * the analysis thread encodes every frame once into a ring buffer and never waits for the network.
+ * a single selector thread copies as many frames as fit from the ring into each client's send buffer and writes them
+ * in one call. a client that cannot keep up falls behind in the ring and skips ahead to the newest frame once the
+ * frames it has not received yet are overwritten, without slowing down the analysis or the other clients.
+ *
+ * stream format (big endian): a header of int magic 'SPSV', int version, float sample rate, int channels, int bars,
+ * double amplitude max and float starting frequency of every bar, followed by frames of int sequence number and
+ * one unsigned short per bar and channel (channel by channel), the magnitude scaled from 0 to amplitude max onto 0 to 65535
+ * @author jockey
+ */
+public class SpectrumServer implements Closeable
+{
+    public static final int MAGIC = 0x53505356; // "SPSV"
+    public static final int VERSION = 1;
+    private static final int CLIENT_BUFFER_SIZE = 1 << 16;
+
+    private final InetSocketAddress address;
+    private final double amplitudeMax;
+    private final int frameLength;
+    private final int frameBytes;
+    private final int capacity;
+    private final ByteBuffer ring;
+    private final ByteBuffer ringView; // only used by the selector thread
+    private final ByteBuffer header;
+    private final AtomicLong written = new AtomicLong(); // sequence number of the next frame
+    private final AtomicLong skipped = new AtomicLong();
+    private final ArrayList<Client> clients = new ArrayList<>();
+    private volatile int clientCount;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param address local address to listen on, port 0 for any free port
+     * @param frequencies starting frequency of every bar of one channel
+     * @param ringFrames number of frames a client may fall behind before it skips ahead
+     */
+    public SpectrumServer(InetSocketAddress address, float sampleRate, int channels, double[] frequencies, double amplitudeMax, int ringFrames)
+    {
+        this.address = address;
+        this.amplitudeMax = amplitudeMax;
+        this.frameLength = channels * frequencies.length;
+        this.frameBytes = 4 + 2 * frameLength;
+        this.capacity = ringFrames;
+        ring = ByteBuffer.allocateDirect(ringFrames * frameBytes);
+        ringView = ring.duplicate();
+
+        header = ByteBuffer.allocate(4 + 4 + 4 + 4 + 4 + 8 + 4 * frequencies.length);
+        header.putInt(MAGIC).putInt(VERSION).putFloat(sampleRate).putInt(channels).putInt(frequencies.length).putDouble(amplitudeMax);
+        for (double f : frequencies) header.putFloat((float) f);
+        header.flip();
+    }
+
+    /**
+     * listen for clients and start sending
+     */
+    public void start() throws IOException
+    {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::serve, "spectrum-server");
+        thread.start();
+    }
+
+    public int getPort()
+    {
+        return server.socket().getLocalPort();
+    }
+
+    public int getClients()
+    {
+        return clientCount;
+    }
+
+    /**
+     * number of frames that were not sent to a client because it could not keep up, summed over all clients
+     */
+    public long getSkipped()
+    {
+        return skipped.get();
+    }
+
+    /**
+     * number of frames published so far
+     */
+    public long getPublished()
+    {
+        return written.get();
+    }
+
+    /**
+     * encode the frame into the ring, to be called from a single thread, e.g. as frame listener of {@link PlayerTask}
+     * never blocks and allocates nothing
+     */
+    public void publish(double[] magnitudes)
+    {
+        long sequence = written.get();
+        int base = (int) (sequence % capacity) * frameBytes;
+        ring.putInt(base, (int) sequence);
+        for (int i = 0; i < frameLength; i++) {
+            double value = Math.max(0, Math.min(1, magnitudes[i] / amplitudeMax));
+            ring.putShort(base + 4 + 2*i, (short) Math.round(value * 0xffff));
+        }
+        written.set(sequence + 1); // volatile write, makes the frame visible to the selector thread
+        VarHandle.storeStoreFence(); // the next frame is only written into a slot after it is published
+        if (selector != null) selector.wakeup();
+    }
+
+    private void serve()
+    {
+        try {
+            while (running) {
+                selector.select();
+                for (var key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) discardInput((Client) key.attachment());
+                }
+                selector.selectedKeys().clear();
+
+                for (int i = 0; i < clients.size(); i++) {
+                    var client = clients.get(i);
+                    try {
+                        send(client);
+                    } catch (IOException ex) {
+                        disconnect(client);
+                        i--;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("spectrum server failed", ex);
+        } finally {
+            for (var client : new ArrayList<>(clients)) disconnect(client);
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            var client = new Client(channel, Math.max(CLIENT_BUFFER_SIZE, header.remaining() + frameBytes));
+            client.out.put(header.duplicate());
+            client.next = written.get(); // start with the next frame
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+            clientCount = clients.size();
+        }
+    }
+
+    /**
+     * clients have nothing to say, but reading tells when they disconnect
+     */
+    private void discardInput(Client client)
+    {
+        try {
+            client.in.clear();
+            if (client.channel.read(client.in) == -1) disconnect(client);
+        } catch (IOException ex) {
+            disconnect(client);
+        }
+    }
+
+    private void disconnect(Client client)
+    {
+        if (!clients.remove(client)) return;
+        clientCount = clients.size();
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ex) {
+            // nothing left to clean up
+        }
+    }
+
+    /**
+     * copy the client's next frames from the ring into its buffer and write as much as the socket takes
+     */
+    private void send(Client client) throws IOException
+    {
+        long end = written.get();
+        if (end - client.next > capacity) { // fell behind by more than the ring holds
+            skipped.addAndGet(end - 1 - client.next);
+            client.next = end - 1;
+        }
+
+        var out = client.out;
+        int mark = out.position();
+        long first = client.next;
+        while (client.next < end && out.remaining() >= frameBytes) {
+            int base = (int) (client.next % capacity) * frameBytes;
+            ringView.limit(base + frameBytes).position(base);
+            out.put(ringView);
+            client.next++;
+        }
+        // the producer may have overwritten the oldest frames while they were copied
+        VarHandle.acquireFence();
+        long now = written.get();
+        if (client.next > first && first <= now - capacity) {
+            out.position(mark);
+            skipped.addAndGet(now - 1 - first);
+            client.next = now - 1;
+        }
+
+        if (out.position() > 0) {
+            out.flip();
+            client.channel.write(out);
+            out.compact();
+        }
+        // only wait for the socket while data or frames that did not fit are pending, new frames wake the selector anyway
+        boolean pending = out.position() > 0 || client.next < written.get();
+        client.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        running = false;
+        if (selector == null) return;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private static class Client
+    {
+        private final SocketChannel channel;
+        private final ByteBuffer out;
+        private final ByteBuffer in = ByteBuffer.allocate(256);
+        private SelectionKey key;
+        private long next; // sequence number of the next frame to send
+
+        Client(SocketChannel channel, int bufferSize)
+        {
+            this.channel = channel;
+            this.out = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, UnsupportedAudioFileException, LineUnavailableException
+    {
+        if (args.length < 1) {
+            System.err.println("usage: serve <input file | --microphone [--sample-rate f] [--sample-size n] [--line-buffer n]> [--port n] [--fft n] [--hop n] [--window hann|hamming|blackman_harris|rectangular]");
+            System.err.println("       [--frequency-max f] [--octave-parts n] [--decibel] [--amplitude-max a] [--constant-q] [--decimate] [--per-channel] [--sliding] [--read-buffer n] [--ring n]");
+            System.err.println("       [--welch output.csv] [--welch-interval ms]");
+            System.exit(1);
+        }
+        int port = 7070, fftSize = 2048, hopSize = 512, octaveParts = 0, readBufferSize = 2048, ringFrames = 256;
+        var window = WindowFunction.HANN;
+        float frequencyMax = 0, sampleRate = 8000;
+        int sampleSize = 16, lineBufferSize = 1024;
+        boolean decibelScale = false, perChannel = false, slidingDft = false, constantQ = false, decimate = false;
+        long amplitudeMax = 5_000_000;
+        String welchFile = null;
+        long welchInterval = 60000;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sample-rate": sampleRate = Float.parseFloat(args[++i]); break;
+                case "--sample-size": sampleSize = Integer.parseInt(args[++i]); break;
+                case "--line-buffer": lineBufferSize = Integer.parseInt(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--fft": fftSize = Integer.parseInt(args[++i]); break;
+                case "--hop": hopSize = Integer.parseInt(args[++i]); break;
+                case "--window": window = WindowFunction.valueOf(args[++i].toUpperCase()); break;
+                case "--frequency-max": frequencyMax = Float.parseFloat(args[++i]); break;
+                case "--octave-parts": octaveParts = Integer.parseInt(args[++i]); break;
+                case "--decibel": decibelScale = true; break;
+                case "--amplitude-max": amplitudeMax = (long) Double.parseDouble(args[++i]); break;
+                case "--constant-q": constantQ = true; break;
+                case "--decimate": decimate = true; break;
+                case "--per-channel": perChannel = true; break;
+                case "--sliding": slidingDft = true; break;
+                case "--read-buffer": readBufferSize = Integer.parseInt(args[++i]); break;
+                case "--ring": ringFrames = Integer.parseInt(args[++i]); break;
+                case "--welch": welchFile = args[++i]; break;
+                case "--welch-interval": welchInterval = Long.parseLong(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        // without audio output, files are paced to real time so clients see them as they would be heard
+        boolean microphone = args[0].equals("--microphone");
+        var file = (microphone ? null : new File(args[0]));
+        var source = (microphone ? AudioSource.microphone(sampleRate, sampleSize, lineBufferSize) : new RealTimeAudioSource(AudioSource.open(file)));
+        if (frequencyMax == 0) frequencyMax = source.getFormat().getSampleRate() / 2;
+
+        var task = new PlayerTask(
+            null, source,
+            readBufferSize, amplitudeMax,
+            frequencyMax, octaveParts > 0, 1.0/octaveParts, decibelScale,
+            fftSize, hopSize, window, perChannel, slidingDft, constantQ, decimate,
+            file, SpectrumCache.getDefault()
+        );
+        var server = new SpectrumServer(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+            source.getFormat().getSampleRate(), task.getChannels(), task.getFrequencies(),
+            decibelScale ? 20 * Math.log10(amplitudeMax) : amplitudeMax, ringFrames
+        );
+        task.setFrameListener(server::publish);
+
+        // the averaged spectrum is written periodically, e.g. for hours of microphone input, and once more at the end
+        var welch = (welchFile != null ? task.accumulate() : null);
+        var dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "welch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (welch != null) welch.dumpPeriodically(dumper, Paths.get(welchFile), welchInterval);
+
+        try (source; server) {
+            server.start();
+            System.out.println("serving spectra on port " + server.getPort());
+            task.call(); // the analysis runs on this thread until the audio ends
+        } finally {
+            dumper.shutdown();
+            if (welch != null) welch.dump(Paths.get(welchFile));
+        }
+    }
+}
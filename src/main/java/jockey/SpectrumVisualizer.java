@@ -1,44 +1,24 @@
 package jockey;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @author jockey
  */
 public class SpectrumVisualizer
 {
-    private static Complex[] fftRec(Complex[] x)
+    public static Complex[] fft(double[] x)
     {
         int N = x.length;
-        if (N == 1) return x;
-
-        var even = ComplexArrayUtils.getEven(x);
-        var odd = ComplexArrayUtils.getOdd(x);
-
-        even = fftRec(even);
-        odd = fftRec(odd);
-
-        Complex w, t, r;
-
-        for (int k = 0; k < N/2; k++) {
-            w = new Complex(-2*Math.PI * k/N);
-            t = new Complex(even[k]);
-            r = new Complex(t);
+        var re = x.clone();
+        var im = new double[N];
+        FFT.forSize(N).transform(re, im);
 
-            w.multiply(odd[k]);
-            t.add(w);
-            r.subtract(w);
-
-            x[k] = t;
-            x[k + N/2] = r;
+        var X = new Complex[N];
+        for (int k = 0; k < N; k++) {
+            X[k] = new Complex(re[k], im[k]);
         }
-        return x;
-    }
-
-    public static Complex[] fft(double[] x)
-    {
-        var X = ComplexArrayUtils.getComplex(x);
-        return fftRec(X);
+        return X;
     }
 
     public static Complex[] dft(double[] x)
@@ -58,6 +38,38 @@ public class SpectrumVisualizer
         return X;
     }
 
+    /**
+     * working buffers of {@link SpectrumVisualizer#getSpectrum}, allocated once per FFT size and reused for every frame
+     */
+    public static class Workspace
+    {
+        final RealFFT rfft;
+        final double[] re, im;
+
+        public Workspace(int fftSize)
+        {
+            rfft = RealFFT.forSize(fftSize);
+            re = new double[rfft.bins()];
+            im = new double[rfft.bins()];
+        }
+    }
+
+    /**
+     * single precision working buffers, half the size of a {@link Workspace}
+     */
+    public static class FloatWorkspace
+    {
+        final RealFFT rfft;
+        final float[] re, im;
+
+        public FloatWorkspace(int fftSize)
+        {
+            rfft = RealFFT.forSize(fftSize);
+            re = new float[rfft.bins()];
+            im = new float[rfft.bins()];
+        }
+    }
+
     /**
      * given an array of samples and frequency bins, process the samples by the FFT and fit them into the frequency bins
      */
@@ -65,19 +77,29 @@ public class SpectrumVisualizer
     {
         int ml = (scaleFrequency ? frequencyBins.length : x.length);
         var magnitudes = new double[ml];
+        getSpectrum(new Workspace(x.length), x, step, scaleFrequency, frequencyBins, scaleAmplitude, amplitudeMax, frequencyMax, magnitudes);
+        return magnitudes;
+    }
+
+    /**
+     * same as {@link #getSpectrum(double[], double, boolean, double[], boolean, double, float)}, but without allocating:
+     * the FFT runs in the given workspace and the result is written into magnitudes
+     */
+    public static void getSpectrum(Workspace ws, double[] x, double step, boolean scaleFrequency, double[] frequencyBins, boolean scaleAmplitude, double amplitudeMax, float frequencyMax, double[] magnitudes)
+    {
+        Arrays.fill(magnitudes, 0);
 
         double freq = 0;
         int bin = 0;
 
-        var ft = SpectrumVisualizer.fft(x);
+        // the input is real, so only the lower half of the spectrum is computed
+        int N = x.length;
+        var re = ws.re;
+        var im = ws.im;
+        ws.rfft.transform(x, re, im);
 
-        for (int i = 0; i < ft.length / 2 && freq <= frequencyMax; i++) {
-            double mag = ft[i].getNorm();
-
-            if (scaleAmplitude && mag != 0) {
-                if (mag < 1) mag = 1; // prevent negative canvas coordinates
-                mag = 20 * Math.log10(mag / amplitudeMax) + 20 * Math.log10(amplitudeMax);
-            }
+        for (int i = 0; i < N / 2 && freq <= frequencyMax; i++) {
+            double mag = magnitude(re, im, i, scaleAmplitude, amplitudeMax);
 
             if (scaleFrequency) {
                 while (bin < frequencyBins.length-1 && freq >= frequencyBins[bin+1]) bin++;
@@ -86,7 +108,114 @@ public class SpectrumVisualizer
             magnitudes[bin] += mag;
             freq += step;
         }
-        return magnitudes;
+    }
+
+    /**
+     * process the samples by the FFT and fit them into the bars of a precomputed {@link FrequencyBinMap}
+     * gives the same result as getSpectrum with the map's frequency bins, without searching the bins every frame
+     */
+    public static void getSpectrum(Workspace ws, double[] x, FrequencyBinMap map, boolean scaleAmplitude, double amplitudeMax, double[] magnitudes)
+    {
+        transform(ws, x);
+        binSpectrum(ws, map, scaleAmplitude, amplitudeMax, magnitudes);
+    }
+
+    /**
+     * first half of getSpectrum: the FFT of the samples into the workspace
+     */
+    public static void transform(Workspace ws, double[] x)
+    {
+        ws.rfft.transform(x, ws.re, ws.im);
+    }
+
+    /**
+     * second half of getSpectrum: fit the FFT in the workspace into the bars of the map
+     * the magnitudes of all bins are computed in one pass over the workspace first, which overwrites the real parts
+     */
+    public static void binSpectrum(Workspace ws, FrequencyBinMap map, boolean scaleAmplitude, double amplitudeMax, double[] magnitudes)
+    {
+        var re = ws.re;
+        var im = ws.im;
+        int bins = map.getFirstBin()[map.getBars()];
+        for (int i = 0; i < bins; i++) re[i] = Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+        if (scaleAmplitude) decibel(re, bins, amplitudeMax);
+
+        var firstBin = map.getFirstBin();
+        for (int b = 0; b < map.getBars(); b++) {
+            double sum = 0;
+            for (int i = firstBin[b]; i < firstBin[b+1]; i++) sum += re[i];
+            magnitudes[b] = sum;
+        }
+
+        var interpolationBin = map.getInterpolationBin();
+        var interpolationWeight = map.getInterpolationWeight();
+        for (int b = 0; b < map.getBars(); b++) {
+            int k = interpolationBin[b];
+            if (k < 0) continue;
+            double w = interpolationWeight[b];
+            magnitudes[b] = (1-w) * re[k] + w * re[k+1];
+        }
+    }
+
+    /**
+     * single precision version of {@link #getSpectrum(Workspace, double[], FrequencyBinMap, boolean, double, double[])}
+     * the bars are still summed up in double precision
+     */
+    public static void getSpectrum(FloatWorkspace ws, float[] x, FrequencyBinMap map, boolean scaleAmplitude, double amplitudeMax, double[] magnitudes)
+    {
+        var re = ws.re;
+        var im = ws.im;
+        ws.rfft.transform(x, re, im);
+
+        int bins = map.getFirstBin()[map.getBars()];
+        for (int i = 0; i < bins; i++) re[i] = (float) Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+
+        double offset = 20 * Math.log10(amplitudeMax);
+        var firstBin = map.getFirstBin();
+        for (int b = 0; b < map.getBars(); b++) {
+            double sum = 0;
+            for (int i = firstBin[b]; i < firstBin[b+1]; i++) sum += (scaleAmplitude ? decibel(re[i], amplitudeMax, offset) : re[i]);
+            magnitudes[b] = sum;
+        }
+
+        var interpolationBin = map.getInterpolationBin();
+        var interpolationWeight = map.getInterpolationWeight();
+        for (int b = 0; b < map.getBars(); b++) {
+            int k = interpolationBin[b];
+            if (k < 0) continue;
+            double w = interpolationWeight[b];
+            double lower = re[k], upper = re[k+1];
+            if (scaleAmplitude) {
+                lower = decibel(lower, amplitudeMax, offset);
+                upper = decibel(upper, amplitudeMax, offset);
+            }
+            magnitudes[b] = (1-w) * lower + w * upper;
+        }
+    }
+
+    /**
+     * convert the first n magnitudes to decibels in place, as {@link #magnitude} does for a single bin
+     */
+    private static void decibel(double[] mag, int n, double amplitudeMax)
+    {
+        double offset = 20 * Math.log10(amplitudeMax);
+        for (int i = 0; i < n; i++) mag[i] = decibel(mag[i], amplitudeMax, offset);
+    }
+
+    static double decibel(double mag, double amplitudeMax, double offset)
+    {
+        if (mag == 0) return 0;
+        return 20 * Math.log10(Math.max(mag, 1) / amplitudeMax) + offset; // at least 1 to prevent negative canvas coordinates
+    }
+
+    private static double magnitude(double[] re, double[] im, int i, boolean scaleAmplitude, double amplitudeMax)
+    {
+        double mag = Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+        if (scaleAmplitude && mag != 0) {
+            if (mag < 1) mag = 1; // prevent negative canvas coordinates
+            mag = 20 * Math.log10(mag / amplitudeMax) + 20 * Math.log10(amplitudeMax);
+        }
+        return mag;
     }
 
     /**
@@ -98,23 +227,27 @@ public class SpectrumVisualizer
         boolean octaveScale, double octave
     )
     {
-        var bins = new ArrayList<Double>();
+        // bins are found from the top down, so they are collected in descending order and reversed at the end
+        var bins = new double[64];
+        int count = 0;
         double freq = frequencyMax;
 
         if (octaveScale) {
             do {
                 freq /= Math.pow(2, octave);
-                bins.add(0, freq);
+                if (count == bins.length) bins = Arrays.copyOf(bins, 2 * count);
+                bins[count++] = freq;
             } while (freq - (freq / Math.pow(2, octave)) >= step);
         }
         while (freq > 0) {
             freq -= step;
-            bins.add(0, freq);
+            if (count == bins.length) bins = Arrays.copyOf(bins, 2 * count);
+            bins[count++] = freq;
         }
 
-        var pBins = new double[bins.size()];
-        for (int i = 0; i < bins.size(); i++) 
-            pBins[i] = bins.get(i).doubleValue();
+        var pBins = new double[count];
+        for (int i = 0; i < count; i++) 
+            pBins[i] = bins[count-1 - i];
         return pBins;
     }
 }
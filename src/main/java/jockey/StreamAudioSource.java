@@ -0,0 +1,74 @@
+package jockey;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * audio source reading from an AudioInputStream, e.g. a microphone or a compressed file
+ * @author jockey
+ */
+public class StreamAudioSource implements AudioSource
+{
+    private final AudioInputStream ias;
+    private final PcmDecoder decoder;
+    private byte[] buffer = new byte[0]; // used if the caller does not need the raw bytes
+
+    public StreamAudioSource(AudioInputStream ias)
+    {
+        this.ias = ias;
+        this.decoder = new PcmDecoder(ias.getFormat());
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return ias.getFormat();
+    }
+
+    @Override
+    public long getFrameLength()
+    {
+        return ias.getFrameLength();
+    }
+
+    @Override
+    public int read(byte[] bytes, double[] samples, int offset, int frames) throws IOException
+    {
+        if (bytes == null) bytes = buffer(frames);
+        int framesRead = readFrames(bytes, frames);
+        if (framesRead > 0) decoder.decode(bytes, framesRead, samples, offset);
+        return framesRead;
+    }
+
+    @Override
+    public int readChannels(byte[] bytes, double[][] samples, int offset, int frames) throws IOException
+    {
+        if (bytes == null) bytes = buffer(frames);
+        int framesRead = readFrames(bytes, frames);
+        if (framesRead > 0) decoder.decodeChannels(bytes, framesRead, samples, offset);
+        return framesRead;
+    }
+
+    /**
+     * internal buffer for callers that do not need the raw bytes
+     */
+    private byte[] buffer(int frames)
+    {
+        if (buffer.length < frames * decoder.getFrameSize()) buffer = new byte[frames * decoder.getFrameSize()];
+        return buffer;
+    }
+
+    private int readFrames(byte[] bytes, int frames) throws IOException
+    {
+        int bytesRead = ias.read(bytes, 0, frames * decoder.getFrameSize());
+        return (bytesRead == -1 ? -1 : bytesRead / decoder.getFrameSize());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        ias.close();
+    }
+}
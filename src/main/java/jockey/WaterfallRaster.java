@@ -0,0 +1,97 @@
+package jockey;
+
+/**
+ * spectrogram of the latest frames as ARGB pixels, one column per frame with the lowest frequency at the bottom
+ * the columns form a ring: a new frame overwrites the oldest column and moves the start of the ring one column on,
+ * so no column is ever moved or drawn again and the memory stays at width times height pixels however long it runs.
+ * the display draws the ring in two parts, from the start to the right edge and from the left edge up to the start
+ *
+ * frames are written by one thread (e.g. as display listener of {@link PlayerTask}) and the pixels are read
+ * by the display; columns before {@link #getColumns()} are complete
+ */
+class WaterfallRaster
+{
+    private final int width, height;
+    private final int channels;
+    private final double amplitudeMax;
+    private final int[] gradient;
+    private final int[] pixels;
+    private final int stripHeight;
+    private final int[] rowFirstBar; // first bar of every row of a strip counted from the bottom, followed by the end
+    private volatile long columns;
+
+    /**
+     * @param bars bars per channel in every frame
+     * @param gradient ARGB color by magnitude, from 0 to the amplitude max, see {@link BarRaster#makeGradient}
+     */
+    WaterfallRaster(int width, int height, int channels, int bars, double amplitudeMax, int[] gradient)
+    {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.amplitudeMax = amplitudeMax;
+        this.gradient = gradient;
+        pixels = new int[width * height];
+
+        // bars are spread over the rows; if there are more bars than rows, a row shows the highest of its bars
+        stripHeight = height / channels;
+        rowFirstBar = new int[stripHeight + 1];
+        for (int r = 0; r <= stripHeight; r++) rowFirstBar[r] = (int) ((long) r * bars / stripHeight);
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * the ring of columns, row by row
+     */
+    int[] getPixels()
+    {
+        return pixels;
+    }
+
+    /**
+     * number of columns written so far, column n is at x = n % width
+     */
+    long getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * x of the oldest column, which is drawn at the left edge
+     */
+    int getStart()
+    {
+        return (int) (columns % width);
+    }
+
+    /**
+     * draw the frame as the newest column, to be called from a single thread
+     */
+    void write(double[] magnitudes)
+    {
+        long column = columns;
+        int x = (int) (column % width);
+        int bars = magnitudes.length / channels;
+        for (int c = 0; c < channels; c++) {
+            for (int r = 0; r < stripHeight; r++) {
+                double magnitude = 0;
+                int end = Math.max(rowFirstBar[r+1], rowFirstBar[r] + 1);
+                for (int b = rowFirstBar[r]; b < Math.min(end, bars); b++) magnitude = Math.max(magnitude, magnitudes[c * bars + b]);
+
+                int color = (int) (magnitude/amplitudeMax * (gradient.length-1));
+                int y = (c+1) * stripHeight - 1 - r;
+                pixels[y * width + x] = gradient[Math.max(0, Math.min(gradient.length-1, color))];
+            }
+        }
+        columns = column + 1; // volatile write, makes the column visible to the display
+    }
+}
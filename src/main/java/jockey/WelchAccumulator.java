@@ -0,0 +1,176 @@
+package jockey;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * long-term power spectrum of every channel, averaged over all frames as by Welch's method, along with the highest
+ * and lowest power every FFT bin has had
+ * every frame is added in place to a running sum, a peak and a minimum per bin, so the memory stays the same however
+ * long it runs and adding a frame allocates nothing. the results can be taken at any time, e.g. periodically with
+ * {@link #dumpPeriodically}
+ *
+ * the power of a bin is the squared magnitude of the windowed FFT; for a density in units per Hz, divide it by the
+ * sample rate and the sum of the squared window. frames are added by the analysis (one thread per channel) while the
+ * results are read by another thread, so a result taken while a frame is added may contain that frame in some bins
+ * only, which does not matter over many frames
+ * @author jockey
+ */
+public class WelchAccumulator
+{
+    private final int channels;
+    private final int bins;
+    private final double binWidth;
+    private final double[] sum, peak, min; // channel c at c * bins
+    private final long[] frames;
+
+    /**
+     * @param bins FFT bins from 0 on that are accumulated
+     * @param binWidth frequency step between bins, the sample rate over the FFT size
+     */
+    public WelchAccumulator(int channels, int bins, double binWidth)
+    {
+        this.channels = channels;
+        this.bins = bins;
+        this.binWidth = binWidth;
+        sum = new double[channels * bins];
+        peak = new double[channels * bins];
+        min = new double[channels * bins];
+        frames = new long[channels];
+        reset();
+    }
+
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    public int getBins()
+    {
+        return bins;
+    }
+
+    public double getBinWidth()
+    {
+        return binWidth;
+    }
+
+    /**
+     * forget all frames added so far
+     */
+    public void reset()
+    {
+        Arrays.fill(sum, 0);
+        Arrays.fill(peak, 0);
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(frames, 0);
+    }
+
+    /**
+     * add the spectrum of one frame of a channel, given as real and imaginary parts of the FFT bins
+     * each channel must only be added from one thread at a time
+     */
+    public void add(int channel, double[] re, double[] im)
+    {
+        int from = channel * bins;
+        for (int k = 0; k < bins; k++) {
+            double p = re[k]*re[k] + im[k]*im[k];
+            sum[from + k] += p;
+            if (p > peak[from + k]) peak[from + k] = p;
+            if (p < min[from + k]) min[from + k] = p;
+        }
+        frames[channel]++;
+    }
+
+    /**
+     * number of frames added to the channel
+     */
+    public long getFrames(int channel)
+    {
+        return frames[channel];
+    }
+
+    /**
+     * copy the average power of every bin of the channel into out, 0 before the first frame
+     */
+    public void getAverage(int channel, double[] out)
+    {
+        long n = frames[channel];
+        for (int k = 0; k < bins; k++) out[k] = (n > 0 ? sum[channel * bins + k] / n : 0);
+    }
+
+    /**
+     * copy the highest power every bin of the channel has had into out
+     */
+    public void getPeak(int channel, double[] out)
+    {
+        System.arraycopy(peak, channel * bins, out, 0, bins);
+    }
+
+    /**
+     * copy the lowest power every bin of the channel has had into out, 0 before the first frame
+     */
+    public void getMin(int channel, double[] out)
+    {
+        for (int k = 0; k < bins; k++) {
+            double m = min[channel * bins + k];
+            out[k] = (m == Double.POSITIVE_INFINITY ? 0 : m);
+        }
+    }
+
+    /**
+     * the results as CSV: the frequency of every bin, followed by its average, peak and minimum power for every channel
+     */
+    public String toCsv()
+    {
+        var csv = new StringBuilder("frequency");
+        for (int c = 0; c < channels; c++) csv.append(String.format(Locale.ROOT, ",average_%d,peak_%d,min_%d", c, c, c));
+        csv.append('\n');
+
+        var average = new double[bins];
+        var minimum = new double[bins];
+        var lines = new StringBuilder[bins];
+        for (int k = 0; k < bins; k++) lines[k] = new StringBuilder(String.format(Locale.ROOT, "%.3f", k * binWidth));
+        for (int c = 0; c < channels; c++) {
+            getAverage(c, average);
+            getMin(c, minimum);
+            for (int k = 0; k < bins; k++) {
+                lines[k].append(String.format(Locale.ROOT, ",%.6g,%.6g,%.6g", average[k], peak[c * bins + k], minimum[k]));
+            }
+        }
+        for (var line : lines) csv.append(line).append('\n');
+        return csv.toString();
+    }
+
+    /**
+     * replace the file with the current results, readers never see a partially written file
+     */
+    public void dump(Path file) throws IOException
+    {
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, toCsv().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * dump the results to the file every period milliseconds on the given executor
+     */
+    public ScheduledFuture<?> dumpPeriodically(ScheduledExecutorService executor, Path file, long period)
+    {
+        return executor.scheduleAtFixedRate(() -> {
+            try {
+                dump(file);
+            } catch (IOException ex) {
+                System.err.println("could not write the averaged spectrum to " + file + ": " + ex.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,63 @@
+package jockey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * window functions applied to a frame before the FFT
+ * coefficients are computed once per size and shared, the returned arrays must not be modified
+ * @author jockey
+ */
+public enum WindowFunction
+{
+    RECTANGULAR("Rectangular", 1.0, 0.0, 0.0, 0.0),
+    HANN("Hann", 0.5, 0.5, 0.0, 0.0),
+    HAMMING("Hamming", 0.54, 0.46, 0.0, 0.0),
+    BLACKMAN_HARRIS("Blackman-Harris", 0.35875, 0.48829, 0.14128, 0.01168);
+
+    private final String name;
+    private final double a0, a1, a2, a3;
+    private final Map<Integer, double[]> coefficients = new ConcurrentHashMap<>();
+
+    WindowFunction(String name, double a0, double a1, double a2, double a3)
+    {
+        this.name = name;
+        this.a0 = a0;
+        this.a1 = a1;
+        this.a2 = a2;
+        this.a3 = a3;
+    }
+
+    /**
+     * get the (cached) coefficients of this window for the given frame size
+     * the window is periodic, which is the usual choice for spectral analysis
+     */
+    public double[] coefficients(int size)
+    {
+        return coefficients.computeIfAbsent(size, this::compute);
+    }
+
+    /**
+     * the terms a0 to a3 of the window w[n] = a0 - a1 cos(2 pi n/N) + a2 cos(4 pi n/N) - a3 cos(6 pi n/N)
+     * applying the window is the same as convolving the spectrum with a short kernel, see {@link SlidingDFT}
+     */
+    public double[] getTerms()
+    {
+        return new double[] {a0, a1, a2, a3};
+    }
+
+    private double[] compute(int size)
+    {
+        var w = new double[size];
+        for (int n = 0; n < size; n++) {
+            double t = 2*Math.PI * n/size;
+            w[n] = a0 - a1*Math.cos(t) + a2*Math.cos(2*t) - a3*Math.cos(3*t);
+        }
+        return w;
+    }
+
+    public String toString()
+    {
+        return name;
+    }
+}
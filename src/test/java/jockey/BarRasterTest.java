@@ -0,0 +1,62 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javafx.scene.paint.Color;
+
+import org.junit.jupiter.api.Test;
+
+class BarRasterTest
+{
+    private static final int[] GRADIENT = BarRaster.makeGradient(Color.BLUE, Color.CORAL, 256);
+
+    private static int barHeight(BarRaster raster, int x, int top, int bottom)
+    {
+        int height = 0;
+        for (int y = top; y < bottom; y++) if (raster.getPixels()[y * raster.getWidth() + x] != 0) height++;
+        return height;
+    }
+
+    @Test
+    void gradientTest()
+    {
+        assertEquals(0xff0000ff, GRADIENT[0]);
+        assertEquals(BarRaster.argb(Color.CORAL), GRADIENT[255]);
+    }
+
+    @Test
+    void barsPerChannelTest()
+    {
+        var raster = new BarRaster(8, 20, GRADIENT, 1.0);
+        // two channels of four bars, two columns each
+        raster.draw(new double[] {0, 25, 50, 200, 100, 0, 0, 0}, 2, 100);
+
+        assertEquals(0, barHeight(raster, 0, 0, 10));
+        assertEquals(2, barHeight(raster, 2, 0, 10));
+        assertEquals(2, barHeight(raster, 3, 0, 10));
+        assertEquals(5, barHeight(raster, 4, 0, 10));
+        assertEquals(9, barHeight(raster, 7, 0, 10)); // clipped, the lowest row stays empty
+        assertEquals(9, barHeight(raster, 0, 10, 20));
+        assertEquals(0, barHeight(raster, 2, 10, 20));
+
+        assertEquals(0, raster.getPixels()[9 * 8 + 7], "lowest row of the strip");
+        assertEquals(GRADIENT[255], raster.getPixels()[8 * 8 + 7]);
+        assertEquals(GRADIENT[127], raster.getPixels()[8 * 8 + 5]);
+    }
+
+    @Test
+    void moreBarsThanColumnsTest()
+    {
+        var raster = new BarRaster(4, 11, GRADIENT, 1.0);
+        var magnitudes = new double[1000];
+        magnitudes[600] = 100;
+        raster.draw(magnitudes, 1, 100);
+
+        assertEquals(0, barHeight(raster, 1, 0, 11));
+        assertEquals(10, barHeight(raster, 2, 0, 11)); // the column shows its highest bar
+        assertEquals(0, barHeight(raster, 3, 0, 11));
+
+        raster.draw(new double[1000], 1, 100);
+        assertEquals(0, barHeight(raster, 2, 0, 11), "previous frame is replaced");
+    }
+}
@@ -0,0 +1,53 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchFeaturesTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void directoryFeaturesTest() throws Exception
+    {
+        var input = Files.createDirectory(dir.resolve("input"));
+        int[] frequencies = {250, 500, 1000, 1500, 3000};
+        for (int f : frequencies) BatchSpectrogramTest.writeSine(input.resolve("sine" + f + ".wav").toFile(), 8000f, 1 + f % 2, f, 8000);
+        Files.write(input.resolve("broken.wav"), new byte[] {1, 2, 3});
+        Files.write(input.resolve("notes.txt"), new byte[] {1, 2, 3});
+
+        var features = new BatchFeatures(512, 256, WindowFunction.HANN, 4000f, true, 1.0, 8000f, 2);
+        var csv = dir.resolve("features.csv").toFile();
+        assertEquals(frequencies.length, features.run(input.toFile(), csv));
+
+        var lines = Files.readAllLines(csv.toPath());
+        assertEquals(frequencies.length + 1, lines.size());
+        var header = lines.get(0).split(",");
+        assertEquals(5 + features.getBands().length, header.length);
+
+        var rows = new HashMap<String, String[]>();
+        for (var line : lines.subList(1, lines.size())) rows.put(line.split(",")[0], line.split(","));
+        for (int f : frequencies) {
+            var row = rows.get("sine" + f + ".wav");
+            assertEquals(1.0, Double.parseDouble(row[1]), 1e-9);
+            assertEquals(Short.MAX_VALUE / 2 / Math.sqrt(2), Double.parseDouble(row[2]), 50);
+            assertEquals(f, Double.parseDouble(row[3]), 8000.0 / 512 * 2); // centroid
+            assertEquals(f, Double.parseDouble(row[4]), 8000.0 / 512); // peak
+
+            // the loudest band is the one containing the frequency
+            var bands = features.getBands();
+            int loudest = 5;
+            for (int i = 5; i < row.length; i++) if (Double.parseDouble(row[i]) > Double.parseDouble(row[loudest])) loudest = i;
+            int band = loudest - 5;
+            assertTrue(bands[band] <= f && (band == bands.length-1 || f < bands[band+1]), "band of " + f);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchSpectrogramTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * write a 16 bit sine wave of the given frequency to all channels
+     */
+    static File writeSine(File file, float sampleRate, int channels, double frequency, int frames) throws Exception
+    {
+        var format = new AudioFormat(sampleRate, 16, channels, true, false);
+        var bytes = new byte[frames * format.getFrameSize()];
+        for (int i = 0; i < frames; i++) {
+            short s = (short) (Short.MAX_VALUE / 2 * Math.sin(2*Math.PI * frequency * i / sampleRate));
+            for (int c = 0; c < channels; c++) {
+                bytes[2*(i*channels + c)] = (byte) s;
+                bytes[2*(i*channels + c) + 1] = (byte) (s >> 8);
+            }
+        }
+        var ais = new AudioInputStream(new ByteArrayInputStream(bytes), format, frames);
+        AudioSystem.write(ais, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    @Test
+    void sineSpectrogramTest() throws Exception
+    {
+        var wav = writeSine(dir.resolve("sine.wav").toFile(), 8000f, 2, 1000, 8000);
+        var spec = dir.resolve("sine.spec").toFile();
+        var png = dir.resolve("sine.png").toFile();
+
+        var batch = new BatchSpectrogram(256, 128, WindowFunction.HANN, 0, false, 0, false, 5e6, false, 4, png, 100);
+        long frames = batch.run(wav, spec);
+        assertEquals((8000 - 256) / 128 + 1, frames);
+        assertTrue(png.length() > 0);
+
+        try (var in = new DataInputStream(new FileInputStream(spec))) {
+            assertEquals(BatchSpectrogram.MAGIC, in.readInt());
+            assertEquals(BatchSpectrogram.VERSION, in.readInt());
+            assertEquals(8000f, in.readFloat());
+            assertEquals(256, in.readInt());
+            assertEquals(128, in.readInt());
+            int bars = in.readInt();
+            assertEquals(frames, in.readLong());
+            var bins = new float[bars];
+            for (int b = 0; b < bars; b++) bins[b] = in.readFloat();
+
+            // every frame peaks at 1000 Hz
+            for (long f = 0; f < frames; f++) {
+                int peak = 0;
+                float max = -1;
+                for (int b = 0; b < bars; b++) {
+                    float m = in.readFloat();
+                    if (m > max) { max = m; peak = b; }
+                }
+                assertEquals(1000, bins[peak], 8000f / 256);
+            }
+        }
+    }
+
+    @Test
+    void singlePrecisionMatchesDoubleTest() throws Exception
+    {
+        var wav = writeSine(dir.resolve("sine.wav").toFile(), 8000f, 1, 1000, 8000);
+        var doubleSpec = dir.resolve("double.spec").toFile();
+        var floatSpec = dir.resolve("float.spec").toFile();
+
+        new BatchSpectrogram(1024, 256, WindowFunction.HANN, 0, true, 1.0/12, true, 5e6, false, 2, null, 0).run(wav, doubleSpec);
+        new BatchSpectrogram(1024, 256, WindowFunction.HANN, 0, true, 1.0/12, true, 5e6, true, 2, null, 0).run(wav, floatSpec);
+
+        try (var expected = new DataInputStream(new FileInputStream(doubleSpec));
+             var actual = new DataInputStream(new FileInputStream(floatSpec))) {
+            // headers are identical
+            for (int i = 0; i < 6; i++) assertEquals(expected.readInt(), actual.readInt());
+            long frames = expected.readLong();
+            assertEquals(frames, actual.readLong());
+
+            // rounding errors are relative to the peak, so bars far below it differ the most, still by less than 0.1 dB
+            while (expected.available() > 0) assertEquals(expected.readFloat(), actual.readFloat(), 0.1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+
+class CaptureAudioSourceTest
+{
+    private static final AudioFormat FORMAT = new AudioFormat(96000f, 16, 1, true, true);
+
+    @Test
+    void deliversAllFramesInOrderTest() throws Exception
+    {
+        int frames = 48_000;
+        try (var source = new CaptureAudioSource(new FakeTargetDataLine(frames, true), FORMAT, 512, 4096)) {
+            var samples = new double[300];
+            long total = 0;
+            int n;
+            while ((n = source.read(null, samples, 0, samples.length)) != -1) {
+                for (int i = 0; i < n; i++) assertEquals((short) (total + i), samples[i], "frame " + (total + i));
+                total += n;
+            }
+            // the ring wraps around many times, the reader keeps up with the line
+            assertEquals(frames, total);
+            assertEquals(0, source.getOverruns());
+        }
+    }
+
+    @Test
+    void countsOverrunsTest() throws Exception
+    {
+        int frames = 10_000, ringFrames = 256;
+        try (var source = new CaptureAudioSource(new FakeTargetDataLine(frames, false), FORMAT, 512, ringFrames)) {
+            // the analysis stalls until all input is captured, only the oldest frames fit into the ring
+            for (int i = 0; i < 500 && source.getBuffered() + source.getOverruns() < frames; i++) Thread.sleep(10);
+            assertEquals(ringFrames, source.getBuffered());
+            assertEquals(frames - ringFrames, source.getOverruns());
+
+            var samples = new double[1000];
+            assertEquals(ringFrames, source.read(null, samples, 0, samples.length));
+            for (int i = 0; i < ringFrames; i++) assertEquals(i, samples[i]);
+            assertEquals(-1, source.read(null, samples, 0, samples.length));
+        }
+    }
+}
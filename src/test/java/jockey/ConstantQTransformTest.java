@@ -0,0 +1,63 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ConstantQTransformTest
+{
+    private static double[] spectrum(ConstantQTransform cq, double... frequencies)
+    {
+        int size = cq.getFftSize();
+        var x = new double[size];
+        for (double f : frequencies) {
+            for (int i = 0; i < size; i++) x[i] += 1000 * Math.cos(2*Math.PI * f * i / 8000);
+        }
+        var magnitudes = new double[cq.getBars()];
+        cq.getSpectrum(new SpectrumVisualizer.Workspace(size), x, 1, false, 5e6, magnitudes);
+        return magnitudes;
+    }
+
+    private static int peak(double[] magnitudes)
+    {
+        int max = 0;
+        for (int b = 0; b < magnitudes.length; b++) if (magnitudes[b] > magnitudes[max]) max = b;
+        return max;
+    }
+
+    @Test
+    void sineAtBarCenterTest()
+    {
+        var cq = ConstantQTransform.of(8000f, 4000f, 1.0/12);
+        assertTrue(cq.getFrequencies()[0] >= ConstantQTransform.MIN_FREQUENCY);
+        assertEquals(cq, ConstantQTransform.of(8000f, 4000f, 1.0/12));
+
+        for (int b : new int[] {3, 40, cq.getBars() - 5}) {
+            double center = cq.getFrequencies()[b] * Math.pow(2, 1.0/24);
+            var magnitudes = spectrum(cq, center);
+            assertEquals(b, peak(magnitudes));
+            assertEquals(500, magnitudes[b], 10); // amplitude / 2
+        }
+    }
+
+    @Test
+    void resolvesLowSemitonesTest()
+    {
+        // a semitone apart at 55 Hz is 3.3 Hz, less than the bin distance of a 2048 point FFT at 8000 Hz
+        var cq = ConstantQTransform.of(8000f, 4000f, 1.0/12);
+        var magnitudes = spectrum(cq, 55, 55 * Math.pow(2, 2.0/12));
+        int low = peak(magnitudes);
+        magnitudes[low] = 0;
+        int high = peak(magnitudes);
+        assertEquals(2, Math.abs(high - low), "two peaks a whole tone apart");
+    }
+
+    @Test
+    void kernelIsSparseTest()
+    {
+        var cq = ConstantQTransform.of(44100f, 22050f, 1.0/24);
+        assertTrue(cq.getFftSize() <= ConstantQTransform.MAX_FFT_SIZE);
+        assertTrue(cq.getKernelSize() < 4 * cq.getFftSize(), "kernel entries " + cq.getKernelSize());
+    }
+}
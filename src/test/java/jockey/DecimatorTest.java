@@ -0,0 +1,73 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class DecimatorTest
+{
+    @Test
+    void factorTest()
+    {
+        assertEquals(8, Decimator.factor(44100, 2000, 4096, 1024));
+        assertEquals(1, Decimator.factor(44100, 22050, 4096, 1024));
+        assertEquals(32, Decimator.factor(44100, 100, 4096, 96)); // limited by the hop size
+        assertEquals(2, Decimator.factor(8000, 100, 64, 64)); // limited by the smallest FFT
+    }
+
+    @Test
+    void passesBandAndRejectsAliasesTest()
+    {
+        float sampleRate = 48000;
+        int factor = 4; // output rate 12000, passband up to 4800
+        assertEquals(4 * 3000, rms(decimate(sine(3000, sampleRate, 48000), factor)) * Math.sqrt(2), 4 * 3000 * 0.01);
+        // would alias to 2000 Hz at the output rate
+        assertTrue(rms(decimate(sine(10000, sampleRate, 48000), factor)) * Math.sqrt(2) < 4 * 3000 * 1e-3);
+    }
+
+    @Test
+    void blocksDoNotMatterTest()
+    {
+        var samples = sine(1234, 44100, 10000);
+        var whole = decimate(samples, 8);
+
+        var decimator = new Decimator(8, 777);
+        var out = new double[777 / 8 + 1];
+        var blocks = new double[whole.length];
+        int produced = 0;
+        for (int offset = 0; offset < samples.length; offset += 777) {
+            int n = decimator.process(samples, offset, Math.min(777, samples.length - offset), out);
+            System.arraycopy(out, 0, blocks, produced, n);
+            produced += n;
+        }
+        assertEquals(samples.length / 8, produced);
+        assertArrayEquals(whole, blocks, 1e-9);
+    }
+
+    private static double[] sine(double frequency, float sampleRate, int length)
+    {
+        var samples = new double[length];
+        for (int i = 0; i < length; i++) samples[i] = 3000 * Math.sin(2 * Math.PI * frequency * i / sampleRate);
+        return samples;
+    }
+
+    private static double[] decimate(double[] samples, int factor)
+    {
+        var out = new double[samples.length / factor];
+        assertEquals(out.length, new Decimator(factor, samples.length).process(samples, 0, samples.length, out));
+        return out;
+    }
+
+    /**
+     * root mean square after the filters have settled
+     */
+    private static double rms(double[] samples)
+    {
+        double sum = 0;
+        int from = 100;
+        for (int i = from; i < samples.length; i++) sum += samples[i] * samples[i];
+        return Math.sqrt(sum / (samples.length - from));
+    }
+}
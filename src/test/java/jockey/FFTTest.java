@@ -0,0 +1,177 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FFTTest
+{
+    private static final double EPSILON = 1e-6;
+
+    private static double[] randomSignal(int N)
+    {
+        var random = new Random(N);
+        var x = new double[N];
+        for (int i = 0; i < N; i++) x[i] = random.nextDouble() * 2 - 1;
+        return x;
+    }
+
+    @Test
+    void fftMatchesDftTest()
+    {
+        for (int N = 1; N <= 512; N *= 2) {
+            var x = randomSignal(N);
+            var expected = SpectrumVisualizer.dft(x);
+            var actual = SpectrumVisualizer.fft(x);
+            for (int k = 0; k < N; k++) {
+                assertEquals(expected[k].real, actual[k].real, EPSILON, "N = " + N + ", k = " + k);
+                assertEquals(expected[k].imaginary, actual[k].imaginary, EPSILON, "N = " + N + ", k = " + k);
+            }
+        }
+    }
+
+    @Test
+    void realFftMatchesDftTest()
+    {
+        for (int N = 2; N <= 512; N *= 2) {
+            var x = randomSignal(N);
+            var expected = SpectrumVisualizer.dft(x);
+            var rfft = RealFFT.forSize(N);
+            var re = new double[rfft.bins()];
+            var im = new double[rfft.bins()];
+            rfft.transform(x, re, im);
+            for (int k = 0; k <= N/2; k++) {
+                assertEquals(expected[k].real, re[k], EPSILON, "N = " + N + ", k = " + k);
+                assertEquals(expected[k].imaginary, im[k], EPSILON, "N = " + N + ", k = " + k);
+            }
+        }
+    }
+
+    @Test
+    void transformInPlaceTest()
+    {
+        var re = new double[] {1, 2, 3, 4};
+        var im = new double[4];
+        FFT.forSize(4).transform(re, im);
+        assertEquals(10, re[0], EPSILON);
+        assertEquals(-2, re[1], EPSILON);
+        assertEquals(2, im[1], EPSILON);
+        assertEquals(-2, re[2], EPSILON);
+        assertEquals(0, im[2], EPSILON);
+        assertEquals(-2, re[3], EPSILON);
+        assertEquals(-2, im[3], EPSILON);
+    }
+
+    @Test
+    void plansAreCachedTest()
+    {
+        assertSame(FFT.forSize(2048), FFT.forSize(2048));
+    }
+
+    @Test
+    void rejectsNonPositiveSizeTest()
+    {
+        assertThrows(IllegalArgumentException.class, () -> FFT.forSize(0));
+    }
+
+    /**
+     * sizes of every kind: small primes, mixed radix, prime factors above the mixed radix limit (Bluestein)
+     */
+    @Test
+    void anySizeMatchesDftTest()
+    {
+        int[] sizes = {3, 5, 6, 7, 9, 10, 12, 15, 24, 37, 49, 74, 96, 100, 641, 1000, 1009, 1764, 2018};
+        for (int N : sizes) {
+            var x = randomSignal(N);
+            var expected = SpectrumVisualizer.dft(x);
+            var actual = SpectrumVisualizer.fft(x);
+            for (int k = 0; k < N; k++) {
+                assertEquals(expected[k].real, actual[k].real, EPSILON * N, "N = " + N + ", k = " + k);
+                assertEquals(expected[k].imaginary, actual[k].imaginary, EPSILON * N, "N = " + N + ", k = " + k);
+            }
+
+            var rfft = RealFFT.forSize(N);
+            var re = new double[rfft.bins()];
+            var im = new double[rfft.bins()];
+            rfft.transform(x, re, im);
+            for (int k = 0; k < rfft.bins(); k++) {
+                assertEquals(expected[k].real, re[k], EPSILON * N, "real, N = " + N + ", k = " + k);
+                assertEquals(expected[k].imaginary, im[k], EPSILON * N, "real, N = " + N + ", k = " + k);
+            }
+        }
+    }
+
+    @Test
+    void complexInputTest()
+    {
+        // transform of a complex exponential is a single peak, for a power of two, mixed radix and Bluestein size
+        for (int N : new int[] {1024, 1764, 1031}) {
+            var re = new double[N];
+            var im = new double[N];
+            for (int n = 0; n < N; n++) {
+                re[n] = Math.cos(2*Math.PI * 5 * n / N);
+                im[n] = Math.sin(2*Math.PI * 5 * n / N);
+            }
+            FFT.forSize(N).transform(re, im);
+            for (int k = 0; k < N; k++) {
+                assertEquals(k == 5 ? N : 0, re[k], 1e-8 * N, "N = " + N + ", k = " + k);
+                assertEquals(0, im[k], 1e-8 * N, "N = " + N + ", k = " + k);
+            }
+        }
+    }
+
+    @Test
+    void floatFftMatchesDoubleTest()
+    {
+        for (int N : new int[] {2, 4, 8, 64, 512, 1024, 4096, 32768, 65536, 1764, 1009}) {
+            var x = randomSignal(N);
+            var xf = new float[N];
+            for (int i = 0; i < N; i++) xf[i] = (float) x[i];
+
+            var rfft = RealFFT.forSize(N);
+            var re = new double[rfft.bins()];
+            var im = new double[rfft.bins()];
+            var ref = new float[rfft.bins()];
+            var imf = new float[rfft.bins()];
+            rfft.transform(x, re, im);
+            rfft.transform(xf, ref, imf);
+
+            // errors grow with log N, relative to the overall level of the spectrum
+            double scale = Math.sqrt(N);
+            for (int k = 0; k <= N/2; k++) {
+                assertEquals(re[k], ref[k], 1e-5 * scale, "N = " + N + ", k = " + k);
+                assertEquals(im[k], imf[k], 1e-5 * scale, "N = " + N + ", k = " + k);
+            }
+        }
+    }
+
+    @Test
+    void floatSpectrumMatchesDoubleTest()
+    {
+        int N = 8192;
+        var x = randomSignal(N);
+        var xf = new float[N];
+        for (int i = 0; i < N; i++) {
+            x[i] = x[i] * 10000 + 20000 * Math.sin(2*Math.PI * 440 * i / 44100);
+            xf[i] = (float) x[i];
+        }
+
+        for (boolean octaveScale : new boolean[] {false, true}) {
+            var map = FrequencyBinMap.of(44100f, N, 22050f, octaveScale, 1.0/12, true);
+            var expected = new double[map.getBars()];
+            var actual = new double[map.getBars()];
+
+            SpectrumVisualizer.getSpectrum(new SpectrumVisualizer.Workspace(N), x, map, false, 5e6, expected);
+            SpectrumVisualizer.getSpectrum(new SpectrumVisualizer.FloatWorkspace(N), xf, map, false, 5e6, actual);
+            for (int b = 0; b < expected.length; b++) assertEquals(expected[b], actual[b], 1e-5 * Math.max(expected[b], 1e5), "bar " + b);
+
+            SpectrumVisualizer.getSpectrum(new SpectrumVisualizer.Workspace(N), x, map, true, 5e6, expected);
+            SpectrumVisualizer.getSpectrum(new SpectrumVisualizer.FloatWorkspace(N), xf, map, true, 5e6, actual);
+            for (int b = 0; b < expected.length; b++) assertEquals(expected[b], actual[b], 1e-3 * Math.max(1, expected[b] / 100), "bar " + b + " in dB");
+        }
+    }
+}
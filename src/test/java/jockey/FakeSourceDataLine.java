@@ -0,0 +1,195 @@
+package jockey;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * stand-in for a speaker line, which plays its buffer at the frame rate like a real line and keeps all bytes written
+ * write blocks while the buffer is full, and the frame position counts the frames played so far
+ */
+class FakeSourceDataLine implements SourceDataLine
+{
+    private final ByteArrayOutputStream played = new ByteArrayOutputStream();
+    private AudioFormat format;
+    private int bufferSize;
+    private long start = -1; // System.nanoTime at which playback started
+    private long startFrame; // frames played before start
+    private long written; // frames written and not flushed
+    private volatile boolean open, running;
+
+    /**
+     * every byte written, in order
+     */
+    synchronized byte[] getWritten()
+    {
+        return played.toByteArray();
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize)
+    {
+        this.format = format;
+        this.bufferSize = bufferSize;
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format)
+    {
+        open(format, 4096);
+    }
+
+    @Override
+    public void open()
+    {
+        open(new AudioFormat(8000f, 16, 1, true, false));
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len)
+    {
+        int frameSize = format.getFrameSize();
+        int frames = len / frameSize;
+        // block until the buffer has room, as the frames before are played
+        while ((written + frames - getLongFramePosition()) * frameSize > bufferSize) LockSupport.parkNanos(100_000);
+        synchronized (this) {
+            if (start < 0) start = System.nanoTime();
+            played.write(b, off, frames * frameSize);
+            written += frames;
+        }
+        return frames * frameSize;
+    }
+
+    @Override
+    public synchronized long getLongFramePosition()
+    {
+        if (start < 0) return startFrame;
+        long elapsed = (long) ((System.nanoTime() - start) / 1e9 * format.getFrameRate());
+        return Math.min(written, startFrame + elapsed);
+    }
+
+    @Override
+    public int getFramePosition()
+    {
+        return (int) getLongFramePosition();
+    }
+
+    @Override
+    public long getMicrosecondPosition()
+    {
+        return (long) (getLongFramePosition() / format.getFrameRate() * 1e6);
+    }
+
+    @Override
+    public void drain()
+    {
+        while (getLongFramePosition() < written) LockSupport.parkNanos(100_000);
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        // the frames not played yet are gone, playback goes on from the next write
+        startFrame = written = getLongFramePosition();
+        start = -1;
+    }
+
+    @Override
+    public void start()
+    {
+        running = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public boolean isActive()
+    {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    @Override
+    public synchronized int available()
+    {
+        return bufferSize - (int) (written - getLongFramePosition()) * format.getFrameSize();
+    }
+
+    @Override
+    public float getLevel()
+    {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo()
+    {
+        return new DataLine.Info(SourceDataLine.class, format);
+    }
+
+    @Override
+    public void close()
+    {
+        open = false;
+        running = false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls()
+    {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control)
+    {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control)
+    {
+        throw new IllegalArgumentException("no controls");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {}
+
+    @Override
+    public void removeLineListener(LineListener listener) {}
+}
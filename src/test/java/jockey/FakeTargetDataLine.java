@@ -0,0 +1,188 @@
+package jockey;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * stand-in for a microphone line, delivering a given number of 16 bit mono frames,
+ * either as fast as they are read or paced to the frame rate like a real line
+ * frame i holds the sample value i (wrapping around), so lost or reordered frames can be detected
+ */
+class FakeTargetDataLine implements TargetDataLine
+{
+    private final long frames;
+    private final boolean realTime;
+    private long start = -1;
+    private AudioFormat format;
+    private int bufferSize;
+    private volatile long position;
+    private volatile boolean open, running;
+
+    FakeTargetDataLine(long frames, boolean realTime)
+    {
+        this.frames = frames;
+        this.realTime = realTime;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize)
+    {
+        this.format = format;
+        this.bufferSize = bufferSize;
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format)
+    {
+        open(format, 4096);
+    }
+
+    @Override
+    public void open()
+    {
+        open(new AudioFormat(8000f, 16, 1, true, true));
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        int n = (int) Math.min(len / 2, frames - position);
+        if (realTime) { // block until the frames would have been captured
+            if (start < 0) start = System.nanoTime();
+            long due = start + (long) ((position + n) * 1e9 / format.getFrameRate());
+            for (long now = System.nanoTime(); now < due; now = System.nanoTime()) LockSupport.parkNanos(due - now);
+        }
+        for (int i = 0; i < n; i++) {
+            short s = (short) (position + i);
+            boolean bigEndian = format.isBigEndian();
+            b[off + 2*i] = (byte) (bigEndian ? s >> 8 : s);
+            b[off + 2*i + 1] = (byte) (bigEndian ? s : s >> 8);
+        }
+        position += n;
+        if (position == frames) running = false; // all input delivered, as if the line had been stopped
+        return 2 * n;
+    }
+
+    @Override
+    public void drain() {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void start()
+    {
+        running = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public boolean isActive()
+    {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    @Override
+    public int available()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getFramePosition()
+    {
+        return (int) position;
+    }
+
+    @Override
+    public long getLongFramePosition()
+    {
+        return position;
+    }
+
+    @Override
+    public long getMicrosecondPosition()
+    {
+        return (long) (position / format.getFrameRate() * 1e6);
+    }
+
+    @Override
+    public float getLevel()
+    {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo()
+    {
+        return new DataLine.Info(TargetDataLine.class, format);
+    }
+
+    @Override
+    public void close()
+    {
+        open = false;
+        running = false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls()
+    {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control)
+    {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control)
+    {
+        throw new IllegalArgumentException("no controls");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {}
+
+    @Override
+    public void removeLineListener(LineListener listener) {}
+}
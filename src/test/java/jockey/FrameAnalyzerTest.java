@@ -0,0 +1,121 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class FrameAnalyzerTest
+{
+    private static int peak(double[] frame, int from, int bars)
+    {
+        int max = from;
+        for (int b = from; b < from + bars; b++) if (frame[b] > frame[max]) max = b;
+        return max - from;
+    }
+
+    @Test
+    void channelsAnalysedSeparatelyTest()
+    {
+        var map = FrequencyBinMap.of(8000f, 256, 4000f, false, 0, false);
+        int bars = map.getBars();
+        var samples = new double[2][1024];
+        for (int i = 0; i < 1024; i++) {
+            samples[0][i] = 10000 * Math.sin(2*Math.PI * 500 * i / 8000);
+            samples[1][i] = 10000 * Math.sin(2*Math.PI * 1500 * i / 8000);
+        }
+
+        try (var analyzer = new FrameAnalyzer(2, 1024, 256, 1, WindowFunction.HANN, false, map, null, false, 5e6, null)) {
+            assertEquals(2 * bars, analyzer.getFrameLength());
+            assertEquals(4, analyzer.process(samples, 1024, 0, 0));
+
+            var frame = new double[analyzer.getFrameLength()];
+            analyzer.copyFrame(3, frame);
+            assertEquals((int) (500 / map.getStep()), peak(frame, 0, bars));
+            assertEquals((int) (1500 / map.getStep()), peak(frame, bars, bars));
+        }
+    }
+
+    @Test
+    void matchesSingleChannelTest()
+    {
+        var map = FrequencyBinMap.of(8000f, 256, 4000f, true, 1.0/6, true);
+        var samples = new double[3][1000];
+        for (int i = 0; i < 1000; i++) {
+            samples[0][i] = samples[1][i] = samples[2][i] = 10000 * Math.sin(2*Math.PI * 700 * i / 8000) + 300 * Math.cos(i);
+        }
+
+        try (var mono = new FrameAnalyzer(1, 1000, 128, 1, WindowFunction.HAMMING, false, map, null, true, 5e6, null);
+             var multi = new FrameAnalyzer(3, 1000, 128, 1, WindowFunction.HAMMING, false, map, null, true, 5e6, null)) {
+            int frames = mono.process(new double[][] {samples[0]}, 1000, 0, 0);
+            assertEquals(frames, multi.process(samples, 1000, 0, 0));
+
+            int bars = map.getBars();
+            var expected = new double[bars];
+            var actual = new double[3 * bars];
+            for (int k = 0; k < frames; k++) {
+                mono.copyFrame(k, expected);
+                multi.copyFrame(k, actual);
+                for (int c = 0; c < 3; c++) {
+                    assertArrayEquals(expected, Arrays.copyOfRange(actual, c * bars, (c+1) * bars));
+                }
+            }
+        }
+    }
+
+    @Test
+    void slidingMatchesFftTest()
+    {
+        var map = FrequencyBinMap.of(8000f, 512, 3000f, true, 1.0/12, true);
+        var samples = new double[1][2000];
+        for (int i = 0; i < 2000; i++) samples[0][i] = 10000 * Math.sin(2*Math.PI * 440 * i / 8000) + 500 * Math.sin(i);
+
+        try (var fft = new FrameAnalyzer(1, 250, 50, 1, WindowFunction.HANN, false, map, null, true, 5e6, null);
+             var sliding = new FrameAnalyzer(1, 250, 50, 1, WindowFunction.HANN, true, map, null, true, 5e6, null)) {
+            var block = new double[1][250];
+            var expected = new double[map.getBars()];
+            var actual = new double[map.getBars()];
+            for (int offset = 0; offset < 2000; offset += 250) {
+                System.arraycopy(samples[0], offset, block[0], 0, 250);
+                int frames = fft.process(block, 250, offset / 50, 0);
+                assertEquals(frames, sliding.process(block, 250, offset / 50, 0));
+                for (int k = 0; k < frames; k++) {
+                    fft.copyFrame(k, expected);
+                    sliding.copyFrame(k, actual);
+                    assertArrayEquals(expected, actual, 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    void decimatedMatchesFullRateTest()
+    {
+        int decimation = Decimator.factor(32000f, 2000f, 2048, 512);
+        assertEquals(4, decimation);
+        var full = FrequencyBinMap.of(32000f, 2048, 2000f, false, 0, false);
+        var reduced = FrequencyBinMap.of(32000f / decimation, 2048 / decimation, 2000f, false, 0, false);
+        assertEquals(full.getBars(), reduced.getBars());
+
+        var samples = new double[1][8192];
+        for (int i = 0; i < 8192; i++) samples[0][i] = 10000 * Math.sin(2*Math.PI * 750 * i / 32000);
+
+        try (var fft = new FrameAnalyzer(1, 8192, 512, 1, WindowFunction.HANN, false, full, null, false, 5e6, null);
+             var decimated = new FrameAnalyzer(1, 8192, 512, decimation, WindowFunction.HANN, false, reduced, null, false, 5e6, null)) {
+            int frames = fft.process(samples, 8192, 0, 0);
+            assertEquals(frames, decimated.process(samples, 8192, 0, 0));
+
+            var expected = new double[full.getBars()];
+            var actual = new double[full.getBars()];
+            for (int k = 2048 / 512; k < frames; k++) { // frames full of samples, past the delay of the filters
+                fft.copyFrame(k, expected);
+                decimated.copyFrame(k, actual);
+                int peak = peak(expected, 0, expected.length);
+                assertEquals(peak, peak(actual, 0, actual.length));
+                assertEquals(expected[peak], actual[peak], expected[peak] * 0.01);
+            }
+        }
+    }
+}
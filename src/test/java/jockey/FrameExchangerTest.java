@@ -0,0 +1,59 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FrameExchangerTest
+{
+    private static void publish(FrameExchanger frames, double value)
+    {
+        frames.writeBuffer()[0] = value;
+        frames.publish();
+    }
+
+    @Test
+    void latestFrameWinsTest()
+    {
+        var frames = new FrameExchanger(1);
+        assertNull(frames.latest());
+
+        publish(frames, 1);
+        publish(frames, 2);
+        publish(frames, 3);
+        assertEquals(3, frames.latest()[0]);
+        assertNull(frames.latest());
+        assertEquals(3, frames.getPublished());
+        assertEquals(2, frames.getDropped());
+
+        publish(frames, 4);
+        assertEquals(4, frames.latest()[0]);
+    }
+
+    @Test
+    void concurrentFramesAreNeverTornTest() throws InterruptedException
+    {
+        var frames = new FrameExchanger(64);
+        int count = 200_000;
+        var producer = new Thread(() -> {
+            for (int f = 1; f <= count; f++) {
+                var buffer = frames.writeBuffer();
+                for (int i = 0; i < buffer.length; i++) buffer[i] = f;
+                frames.publish();
+            }
+        });
+        producer.start();
+
+        double last = 0;
+        while (last < count) {
+            var frame = frames.latest();
+            if (frame == null) continue;
+            for (double v : frame) assertEquals(frame[0], v);
+            assertTrue(frame[0] > last);
+            last = frame[0];
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,80 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FrameTimelineTest
+{
+    /**
+     * frames 0, 1, 2, ... at audio frames 0, 100, 200, ..., frame i holding the value i
+     */
+    private static void publish(FrameTimeline timeline, int from, int to)
+    {
+        for (int i = from; i < to; i++) {
+            timeline.writeBuffer()[0] = i;
+            timeline.publish(i * 100L);
+        }
+    }
+
+    @Test
+    void picksFrameOfPositionTest()
+    {
+        var timeline = new FrameTimeline(1, 8, 8000f, () -> -1);
+        publish(timeline, 0, 5);
+        assertNull(timeline.at(-1)); // nothing heard yet
+
+        assertEquals(1, timeline.at(150)[0]);
+        assertNull(timeline.at(199)); // still the same frame
+        assertEquals(2, timeline.at(200)[0]);
+        assertEquals(4, timeline.at(10_000)[0]); // the newest, if the analysis is behind
+        assertEquals(1, timeline.getDropped());
+    }
+
+    @Test
+    void oldFramesAreOverwrittenTest()
+    {
+        var timeline = new FrameTimeline(1, 4, 8000f, () -> -1);
+        publish(timeline, 0, 10);
+        assertNull(timeline.at(650)); // frames 0 to 6 are gone, the oldest slot is about to be written
+        assertEquals(7, timeline.at(750)[0]);
+
+        // after a jump back, the frames of the new position are the newest
+        for (int i = 0; i < 3; i++) {
+            timeline.writeBuffer()[0] = 100 + i;
+            timeline.publish(i * 100L);
+        }
+        assertEquals(101, timeline.at(150)[0]);
+    }
+
+    @Test
+    void listenerGetsEveryFrameWhenHeardTest()
+    {
+        var timeline = new FrameTimeline(1, 8, 8000f, () -> -1);
+        var heard = new ArrayList<Double>();
+        timeline.setFrameListener(frame -> heard.add(frame[0]));
+        publish(timeline, 0, 6);
+
+        timeline.at(250);
+        assertEquals(List.of(0.0, 1.0, 2.0), heard);
+        timeline.at(299);
+        assertEquals(3, heard.size()); // nothing new heard
+        timeline.at(450);
+        assertEquals(List.of(0.0, 1.0, 2.0, 3.0, 4.0), heard);
+    }
+
+    @Test
+    void timestampIsWhenFrameWasHeardTest()
+    {
+        var timeline = new FrameTimeline(1, 8, 8000f, () -> -1);
+        publish(timeline, 0, 3);
+        timeline.at(180); // frame 1 was heard 80 frames, i.e. 10 ms, ago
+        long latency = System.nanoTime() - timeline.getTimestamp();
+        assertTrue(latency >= 10_000_000 && latency < 100_000_000, "latency " + latency);
+    }
+}
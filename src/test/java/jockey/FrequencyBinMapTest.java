@@ -0,0 +1,62 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FrequencyBinMapTest
+{
+    @Test
+    void linearBinsTest()
+    {
+        assertArrayEquals(new double[] {0, 10, 20, 30, 40, 50, 60, 70, 80, 90}, SpectrumVisualizer.makeFrequencyBins(100, 10, false, 0));
+    }
+
+    @Test
+    void octaveBinsTest()
+    {
+        var bins = SpectrumVisualizer.makeFrequencyBins(16000, 10, true, 1.0/3);
+        for (int i = 1; i < bins.length; i++) assertTrue(bins[i] > bins[i-1]);
+        assertEquals(16000 / Math.pow(2, 1.0/3), bins[bins.length-1], 1e-9);
+    }
+
+    @Test
+    void matchesSpectrumWalkTest()
+    {
+        var random = new Random(1);
+        var x = new double[1024];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian() * 1000;
+
+        for (boolean octaveScale : new boolean[] {false, true}) {
+            for (boolean decibel : new boolean[] {false, true}) {
+                var map = FrequencyBinMap.of(44100f, 1024, 16000f, octaveScale, 1.0/6, false);
+                var expected = SpectrumVisualizer.getSpectrum(x, map.getStep(), true, map.getFrequencies(), decibel, 5e6, 16000f);
+                var actual = new double[map.getBars()];
+                SpectrumVisualizer.getSpectrum(new SpectrumVisualizer.Workspace(1024), x, map, decibel, 5e6, actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void emptyBarsAreInterpolatedTest()
+    {
+        var map = FrequencyBinMap.of(44100f, 256, 22050f, true, 1.0/12, true);
+        var firstBin = map.getFirstBin();
+        for (int b = 0; b < map.getBars(); b++) {
+            if (firstBin[b] == firstBin[b+1]) assertTrue(map.getInterpolationBin()[b] >= 0);
+            else assertEquals(-1, map.getInterpolationBin()[b]);
+        }
+    }
+
+    @Test
+    void mapsAreCachedTest()
+    {
+        assertSame(FrequencyBinMap.of(48000f, 2048, 24000f, true, 1.0/12, false), FrequencyBinMap.of(48000f, 2048, 24000f, true, 1.0/12, false));
+    }
+}
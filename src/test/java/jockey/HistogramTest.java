@@ -0,0 +1,52 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest
+{
+    @Test
+    void bucketsCoverValuesTest()
+    {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Histogram.bucket(value);
+            assertTrue(Histogram.highestValue(bucket) >= value);
+            if (bucket > 0) assertTrue(Histogram.highestValue(bucket - 1) < value);
+            assertTrue(Histogram.highestValue(bucket) - value <= value / 16, "resolution of " + value);
+        }
+    }
+
+    @Test
+    void percentilesTest()
+    {
+        var h = new Histogram();
+        for (int i = 1; i <= 1000; i++) h.record(i * 1000L);
+
+        assertEquals(1000, h.getCount());
+        assertEquals(1_000_000, h.getMax());
+        assertEquals(500_500, h.getMean(), 1e-9);
+        assertEquals(500_000, h.getPercentile(0.5), 500_000 / 16.0);
+        assertEquals(990_000, h.getPercentile(0.99), 990_000 / 16.0);
+        assertEquals(1_000_000, h.getPercentile(1));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(0.5));
+    }
+
+    @Test
+    void metricsJsonTest()
+    {
+        var metrics = new PipelineMetrics();
+        metrics.get(PipelineMetrics.Stage.FFT).record(2000);
+        metrics.frameAnalysed();
+
+        var json = metrics.toJson();
+        assertTrue(json.contains("\"analysed\": 1"), json);
+        assertTrue(json.contains("\"fft\": {\"count\": 1, \"mean\": 2.000"), json);
+        assertTrue(json.contains("\"latency\": {\"count\": 0"), json);
+    }
+}
@@ -0,0 +1,78 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedWavReaderTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesStreamTest() throws Exception
+    {
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("sine.wav").toFile(), 8000f, 2, 440, 1000);
+        assertTrue(MappedWavReader.isSupported(wav));
+
+        try (var mapped = new MappedWavReader(wav);
+             var stream = new StreamAudioSource(AudioSystem.getAudioInputStream(wav))) {
+            assertEquals(1000, mapped.getFrameLength());
+            assertEquals(stream.getFormat().getFrameSize(), mapped.getFormat().getFrameSize());
+
+            var mappedBytes = new byte[300 * 4];
+            var streamBytes = new byte[300 * 4];
+            var mappedSamples = new double[300];
+            var streamSamples = new double[300];
+            int total = 0;
+            while (true) {
+                int n = mapped.read(mappedBytes, mappedSamples, 0, 300);
+                if (n == -1) break;
+                assertEquals(n, stream.read(streamBytes, streamSamples, 0, n));
+                assertArrayEquals(streamBytes, mappedBytes);
+                assertArrayEquals(streamSamples, mappedSamples);
+                total += n;
+            }
+            assertEquals(1000, total);
+
+            mapped.setFramePosition(990);
+            assertEquals(10, mapped.read(null, mappedSamples, 0, 300));
+        }
+    }
+
+    @Test
+    void malformedHeaderIsRejectedTest() throws Exception
+    {
+        // block align of 0, which would divide by zero
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("align.wav").toFile(), 8000f, 2, 440, 1000);
+        var bytes = Files.readAllBytes(wav.toPath());
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(32, (short) 0);
+        Files.write(wav.toPath(), bytes);
+        assertFalse(MappedWavReader.isSupported(wav));
+        assertThrows(IOException.class, () -> new MappedWavReader(wav));
+
+        // fmt chunk too short to hold the sample size
+        var header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952).putInt(36).putInt(0x45564157); // "RIFF", "WAVE"
+        header.putInt(0x20746d66).putInt(8).putShort((short) 1).putShort((short) 1).putInt(8000); // "fmt "
+        header.putInt(0x61746164).putInt(4).putInt(0); // "data"
+        var shortFmt = dir.resolve("short.wav");
+        Files.write(shortFmt, Arrays.copyOf(header.array(), header.position()));
+        assertFalse(MappedWavReader.isSupported(shortFmt.toFile()));
+        assertThrows(IOException.class, () -> new MappedWavReader(shortFmt.toFile()));
+    }
+}
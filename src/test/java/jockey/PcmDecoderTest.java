@@ -0,0 +1,46 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+
+class PcmDecoderTest
+{
+    private static double[] decode(AudioFormat format, byte... bytes)
+    {
+        return PcmDecoder.toDoubles(format, bytes);
+    }
+
+    @Test
+    void interleavedChannelsTest()
+    {
+        // two stereo frames: (100, 300) and (-100, -300)
+        var format = new AudioFormat(44100f, 16, 2, true, false);
+        assertArrayEquals(new double[] {200, -200}, decode(format, (byte) 100, (byte) 0, (byte) 44, (byte) 1, (byte) -100, (byte) -1, (byte) -44, (byte) -2));
+    }
+
+    @Test
+    void sampleSizesTest()
+    {
+        var unsigned8 = new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, 8000f, 8, 1, 1, 8000f, false);
+        assertArrayEquals(new double[] {-128 * 256, 0, 127 * 256}, decode(unsigned8, (byte) 0, (byte) 128, (byte) 255));
+
+        var big16 = new AudioFormat(8000f, 16, 1, true, true);
+        assertArrayEquals(new double[] {-2}, decode(big16, (byte) 0xff, (byte) 0xfe));
+
+        var little24 = new AudioFormat(8000f, 24, 1, true, false);
+        assertArrayEquals(new double[] {-1, 0x7fff}, decode(little24, (byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0x00, (byte) 0xff, (byte) 0x7f));
+
+        var big24 = new AudioFormat(8000f, 24, 1, true, true);
+        assertArrayEquals(new double[] {-1, 0x7fff}, decode(big24, (byte) 0xff, (byte) 0xff, (byte) 0x00, (byte) 0x7f, (byte) 0xff, (byte) 0x00));
+
+        var little32 = new AudioFormat(8000f, 32, 1, true, false);
+        assertArrayEquals(new double[] {-1}, decode(little32, (byte) 0, (byte) 0, (byte) 0xff, (byte) 0xff));
+
+        var float32 = new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 8000f, 32, 1, 4, 8000f, true);
+        int half = Float.floatToIntBits(0.5f);
+        assertArrayEquals(new double[] {16384}, decode(float32, (byte) (half >> 24), (byte) (half >> 16), (byte) (half >> 8), (byte) half));
+    }
+}
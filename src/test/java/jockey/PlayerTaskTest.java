@@ -0,0 +1,245 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PlayerTaskTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * endless sine wave that records the bytes allocated by the reading thread between two reads
+     */
+    static class SineSource implements AudioSource
+    {
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final AudioFormat format = new AudioFormat(44100f, 16, 2, true, false);
+        private final int warmup, measured;
+        private int reads;
+        private long phase, allocatedBefore;
+        long allocated = -1;
+
+        SineSource(int warmup, int measured)
+        {
+            this.warmup = warmup;
+            this.measured = measured;
+        }
+
+        @Override
+        public AudioFormat getFormat()
+        {
+            return format;
+        }
+
+        @Override
+        public long getFrameLength()
+        {
+            return AudioSystem.NOT_SPECIFIED;
+        }
+
+        @Override
+        public int read(byte[] bytes, double[] samples, int offset, int frames)
+        {
+            if (reads == warmup) allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if (reads == warmup + measured) {
+                allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+                return -1;
+            }
+            reads++;
+            for (int i = 0; i < frames; i++) samples[offset + i] = 10000 * Math.sin(phase++ * 0.1);
+            return frames;
+        }
+
+        @Override
+        public int readChannels(byte[] bytes, double[][] samples, int offset, int frames)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    @Test
+    void steadyStateDoesNotAllocateTest() throws Exception
+    {
+        var source = new SineSource(20_000, 5_000);
+        var task = new PlayerTask(
+            null, source,
+            2048, 5_000_000,
+            22050f, true, 1.0/12, true,
+            512, 128, WindowFunction.HANN, false, false, false, false,
+            null, null
+        );
+        task.accumulate(); // averaging adds to the spectrum in place
+        task.call();
+
+        assertTrue(task.getFrames().getPublished() > 0);
+        assertEquals(0, source.allocated, "bytes allocated after warm-up");
+        // metrics are always recorded, so they are part of the steady state measured above
+        var metrics = task.getMetrics();
+        assertEquals(task.getFrames().getPublished(), metrics.getFramesAnalysed());
+        assertEquals(metrics.getFramesAnalysed(), metrics.get(PipelineMetrics.Stage.FFT).getCount());
+        assertTrue(metrics.get(PipelineMetrics.Stage.READ).getCount() > 0);
+    }
+
+    @Test
+    void seekSkipsToPositionTest() throws Exception
+    {
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("sine.wav").toFile(), 8000f, 1, 440, 8000);
+        try (var source = new MappedWavReader(wav)) {
+            var task = new PlayerTask(
+                null, source,
+                256, 5_000_000,
+                4000f, false, 0, false,
+                256, 128, WindowFunction.HANN, false, false, false, false,
+                null, null
+            );
+            task.requestSeek(7000);
+            task.call();
+
+            assertEquals(8000, task.getFramePosition());
+            assertEquals((8000 - 7000 / 128 * 128) / 128, task.getFrames().getPublished()); // seek is aligned to the hop size
+        }
+    }
+
+    @Test
+    void playbackRunsBehindAnalysisTest() throws Exception
+    {
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("sine.wav").toFile(), 8000f, 1, 440, 4000);
+        var line = new FakeSourceDataLine(); // plays in real time
+        try (var source = new MappedWavReader(wav)) {
+            var task = new PlayerTask(
+                line, source,
+                256, 5_000_000,
+                4000f, false, 0, false,
+                256, 128, WindowFunction.HANN, false, false, false, false,
+                null, null
+            );
+            var display = (FrameTimeline) task.getDisplayFrames();
+            var executor = Executors.newSingleThreadExecutor();
+            var done = executor.submit(task::call);
+            executor.shutdown();
+
+            // the analysis reads ahead of what is heard, and the display shows the frame of what is heard,
+            // the newest one at or before it, so within one hop
+            long ahead = 0;
+            int shown = 0;
+            while (!done.isDone()) {
+                long heard = task.getPlaybackPosition();
+                if (heard >= 0) ahead = Math.max(ahead, task.getFramePosition() - heard);
+                var frame = display.latest();
+                long heardAfter = task.getPlaybackPosition();
+                if (frame != null) {
+                    long position = display.getPosition();
+                    assertTrue(position <= heardAfter, "frame at " + position + " shown while hearing " + heardAfter);
+                    assertTrue(heard - position < 128, "frame at " + position + " shown while hearing " + heard);
+                    shown++;
+                }
+                Thread.sleep(5);
+            }
+            done.get(); // fails if the task did
+            assertTrue(ahead > 128, "frames read ahead of playback: " + ahead);
+            assertTrue(shown > 10, "frames shown: " + shown);
+
+            // all audio reached the line, in order
+            var file = Files.readAllBytes(wav.toPath());
+            assertArrayEquals(Arrays.copyOfRange(file, file.length - 8000, file.length), line.getWritten());
+        }
+    }
+
+    /**
+     * all frames of an analysis of the whole file, seeking to the given frame first unless it is negative
+     */
+    private static List<double[]> analyse(File wav, SpectrumCache cache, long seek) throws Exception
+    {
+        try (var source = new MappedWavReader(wav)) {
+            var task = new PlayerTask(
+                null, source,
+                256, 5_000_000,
+                4000f, false, 0, false,
+                256, 128, WindowFunction.HANN, false, false, false, false,
+                wav, cache
+            );
+            var frames = new ArrayList<double[]>();
+            task.setFrameListener(frame -> frames.add(frame.clone()));
+            if (seek >= 0) task.requestSeek(seek);
+            task.call();
+            return frames;
+        }
+    }
+
+    @Test
+    void seekDoesNotCacheIncompleteSpectraTest() throws Exception
+    {
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("sine.wav").toFile(), 8000f, 1, 440, 8000);
+        var cache = new SpectrumCache(dir.resolve("cache"), 1 << 20);
+        analyse(wav, cache, 7000); // only the end is analysed
+
+        var expected = analyse(wav, null, -1);
+        var actual = analyse(wav, cache, -1);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) assertArrayEquals(expected.get(i), actual.get(i), 1e-3, "frame " + i);
+    }
+
+    @Test
+    void constantQFramesFollowPlaybackTest() throws Exception
+    {
+        // silence, then a low tone from the onset on, whose constant-Q kernel is about 3400 samples long
+        int onset = 6000;
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("onset.wav").toFile(), 8000f, 1, 40, 14000);
+        var bytes = Files.readAllBytes(wav.toPath());
+        Arrays.fill(bytes, bytes.length - 2 * 14000, bytes.length - 2 * (14000 - onset), (byte) 0);
+        Files.write(wav.toPath(), bytes);
+
+        var line = new FakeSourceDataLine();
+        try (var source = new MappedWavReader(wav)) {
+            var task = new PlayerTask(
+                line, source,
+                256, 5_000_000,
+                4000f, true, 1.0/12, false,
+                256, 128, WindowFunction.HANN, false, false, true, false,
+                null, null
+            );
+            var display = task.getDisplayFrames();
+            var executor = Executors.newSingleThreadExecutor();
+            var done = executor.submit(task::call);
+            executor.shutdown();
+
+            // the frame shown is centred on what is heard, so the tone shows up before the onset is heard
+            double beforeOnset = 0, afterOnset = 0;
+            while (!done.isDone()) {
+                var frame = display.latest();
+                long heard = task.getPlaybackPosition();
+                if (frame != null) {
+                    double max = Arrays.stream(frame).max().getAsDouble();
+                    if (heard > onset - 1500 && heard < onset - 300) beforeOnset = Math.max(beforeOnset, max);
+                    if (heard > onset + 2000) afterOnset = Math.max(afterOnset, max);
+                }
+                Thread.sleep(2);
+            }
+            done.get();
+            assertTrue(afterOnset > 0);
+            assertTrue(beforeOnset > 0.1 * afterOnset, "before the onset " + beforeOnset + ", after " + afterOnset);
+        }
+    }
+}
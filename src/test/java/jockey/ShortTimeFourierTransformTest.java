@@ -0,0 +1,38 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ShortTimeFourierTransformTest
+{
+    @Test
+    void overlappingFramesTest()
+    {
+        var stft = new ShortTimeFourierTransform(4, 2, WindowFunction.RECTANGULAR);
+        var samples = new double[] {1, 2, 3, 4, 5, 6, 7};
+        var frames = new double[3][];
+        int count = 0, offset = 0;
+        while (offset < samples.length) {
+            offset += stft.write(samples, offset, samples.length - offset);
+            if (stft.hasFrame()) frames[count++] = stft.takeFrame().clone();
+        }
+        assertEquals(3, count);
+        assertArrayEquals(new double[] {0, 0, 1, 2}, frames[0]);
+        assertArrayEquals(new double[] {1, 2, 3, 4}, frames[1]);
+        assertArrayEquals(new double[] {3, 4, 5, 6}, frames[2]);
+        assertFalse(stft.hasFrame());
+    }
+
+    @Test
+    void windowIsAppliedTest()
+    {
+        var stft = new ShortTimeFourierTransform(4, 4, WindowFunction.HANN);
+        assertEquals(4, stft.write(new double[] {1, 1, 1, 1}, 0, 4));
+        assertTrue(stft.hasFrame());
+        assertArrayEquals(new double[] {0, 0.5, 1, 0.5}, stft.takeFrame(), 1e-12);
+    }
+}
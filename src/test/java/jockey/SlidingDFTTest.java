@@ -0,0 +1,47 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SlidingDFTTest
+{
+    @Test
+    void matchesWindowedFftTest()
+    {
+        var random = new Random(17);
+        var samples = new double[5000];
+        for (int i = 0; i < samples.length; i++) samples[i] = 10000 * Math.sin(0.3 * i) + 2000 * random.nextGaussian();
+
+        for (int size : new int[] {256, 250, 63}) {
+            for (var window : WindowFunction.values()) {
+                int bins = size/2 + 1, hop = 37;
+                var sdft = new SlidingDFT(size, hop, window, bins);
+                var stft = new ShortTimeFourierTransform(size, hop, window);
+                var re = new double[bins];
+                var im = new double[bins];
+                var expectedRe = new double[bins];
+                var expectedIm = new double[bins];
+
+                int offset = 0, frames = 0;
+                while (offset < samples.length) {
+                    int n = sdft.write(samples, offset, samples.length - offset);
+                    assertEquals(n, stft.write(samples, offset, samples.length - offset));
+                    offset += n;
+                    if (!sdft.hasFrame()) continue;
+
+                    sdft.takeSpectrum(re, im);
+                    RealFFT.forSize(size).transform(stft.takeFrame(), expectedRe, expectedIm);
+                    for (int k = 0; k < bins; k++) {
+                        assertEquals(expectedRe[k], re[k], 1e-6, size + " " + window + " bin " + k);
+                        assertEquals(expectedIm[k], im[k], 1e-6, size + " " + window + " bin " + k);
+                    }
+                    frames++;
+                }
+                assertEquals(samples.length / hop, frames);
+            }
+        }
+    }
+}
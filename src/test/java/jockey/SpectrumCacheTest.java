@@ -0,0 +1,86 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpectrumCacheTest
+{
+    @TempDir
+    Path dir;
+
+    private static void store(SpectrumCache cache, String key, int frames) throws Exception
+    {
+        try (var writer = cache.create(key, 3)) {
+            for (int f = 0; f < frames; f++) writer.append(new double[] {f, f + 0.5, -f});
+            writer.commit();
+        }
+    }
+
+    @Test
+    void roundTripTest() throws Exception
+    {
+        var cache = new SpectrumCache(dir.resolve("cache"), 1 << 20);
+        assertNull(cache.open("a"));
+
+        store(cache, "a", 1000);
+        var entry = cache.open("a");
+        assertNotNull(entry);
+        assertEquals(3, entry.getBars());
+        assertEquals(1000, entry.getFrames());
+        var out = new double[3];
+        entry.read(999, out);
+        assertArrayEquals(new double[] {999, 999.5, -999}, out);
+    }
+
+    @Test
+    void uncommittedEntriesAreDiscardedTest() throws Exception
+    {
+        var cache = new SpectrumCache(dir, 1 << 20);
+        try (var writer = cache.create("a", 3)) {
+            writer.append(new double[3]);
+        }
+        assertNull(cache.open("a"));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedTest() throws Exception
+    {
+        // room for two entries of 100 frames
+        var cache = new SpectrumCache(dir, 2 * (16 + 100 * 3 * 4));
+        store(cache, "a", 100);
+        Files.setLastModifiedTime(dir.resolve("a.spc"), FileTime.fromMillis(1000));
+        store(cache, "b", 100);
+        Files.setLastModifiedTime(dir.resolve("b.spc"), FileTime.fromMillis(2000));
+        assertNotNull(cache.open("a")); // a is now the most recently used
+        store(cache, "c", 100);
+
+        assertNotNull(cache.open("a"));
+        assertNull(cache.open("b"));
+        assertNotNull(cache.open("c"));
+    }
+
+    @Test
+    void keyDependsOnContentAndParametersTest() throws Exception
+    {
+        var file = dir.resolve("audio").toFile();
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+        var key = SpectrumCache.key(file, "fft=2048");
+        assertEquals(key, SpectrumCache.key(file, "fft=2048"));
+        assertNotEquals(key, SpectrumCache.key(file, "fft=4096"));
+        Files.write(file.toPath(), new byte[] {1, 2, 4});
+        assertNotEquals(key, SpectrumCache.key(file, "fft=2048"));
+    }
+}
@@ -0,0 +1,120 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class SpectrumServerTest
+{
+    private static SpectrumServer server(int bars, int ringFrames) throws IOException
+    {
+        var frequencies = new double[bars];
+        for (int b = 0; b < bars; b++) frequencies[b] = 10 * b;
+        var server = new SpectrumServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 8000f, 1, frequencies, 100, ringFrames);
+        server.start();
+        return server;
+    }
+
+    private static SocketChannel connect(SpectrumServer server) throws IOException
+    {
+        return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+    }
+
+    private static void awaitClients(SpectrumServer server, int clients) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && server.getClients() < clients; i++) Thread.sleep(10);
+        assertEquals(clients, server.getClients());
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, int bytes) throws IOException
+    {
+        var buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) throw new IOException("closed");
+        }
+        return buffer.flip();
+    }
+
+    @Test
+    void manyClientsTest() throws Exception
+    {
+        int bars = 32, frames = 50, clients = 200;
+        try (var server = server(bars, 64)) {
+            var channels = new ArrayList<SocketChannel>();
+            for (int c = 0; c < clients; c++) channels.add(connect(server));
+            awaitClients(server, clients);
+
+            var frame = new double[bars];
+            for (int k = 0; k < frames; k++) {
+                for (int b = 0; b < bars; b++) frame[b] = (k + b) % 101;
+                server.publish(frame);
+            }
+
+            for (var channel : channels) {
+                var header = readFully(channel, 28 + 4 * bars);
+                assertEquals(SpectrumServer.MAGIC, header.getInt());
+                assertEquals(SpectrumServer.VERSION, header.getInt());
+                assertEquals(8000f, header.getFloat());
+                assertEquals(1, header.getInt());
+                assertEquals(bars, header.getInt());
+                assertEquals(100, header.getDouble());
+                assertEquals(10f, header.getFloat(28 + 4));
+
+                var data = readFully(channel, frames * (4 + 2 * bars));
+                for (int k = 0; k < frames; k++) {
+                    assertEquals(k, data.getInt());
+                    for (int b = 0; b < bars; b++) {
+                        double expected = Math.min(100, (k + b) % 101);
+                        assertEquals(expected, (data.getShort() & 0xffff) / 65535.0 * 100, 0.01);
+                    }
+                }
+                channel.close();
+            }
+            assertEquals(0, server.getSkipped());
+        }
+    }
+
+    @Test
+    void slowClientIsSkippedTest() throws Exception
+    {
+        int bars = 4096, frames = 2000;
+        try (var server = server(bars, 16);
+             var slow = connect(server);
+             var fast = connect(server)) {
+            awaitClients(server, 2);
+
+            var last = new AtomicLong(-1);
+            var reader = new Thread(() -> {
+                try {
+                    readFully(fast, 28 + 4 * bars);
+                    while (last.get() < frames - 1) {
+                        var frame = readFully(fast, 4 + 2 * bars);
+                        int sequence = frame.getInt();
+                        assertTrue(sequence > last.get(), "frames arrive in order");
+                        last.set(sequence);
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            reader.start();
+
+            // the slow client never reads, publishing must neither block nor hold back the fast client
+            var frame = new double[bars];
+            for (int k = 0; k < frames; k++) server.publish(frame);
+            reader.join(10_000);
+
+            assertEquals(frames - 1, last.get());
+            assertTrue(server.getSkipped() > 0, "slow client skipped frames");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javafx.scene.paint.Color;
+
+import org.junit.jupiter.api.Test;
+
+class WaterfallRasterTest
+{
+    private static final int[] GRADIENT = BarRaster.makeGradient(Color.BLACK, Color.CORAL, 256);
+
+    @Test
+    void columnsFormRingTest()
+    {
+        var waterfall = new WaterfallRaster(3, 4, 1, 4, 100, GRADIENT);
+        var pixels = waterfall.getPixels();
+        for (int k = 0; k < 5; k++) {
+            var frame = new double[4];
+            frame[k % 4] = 100; // bar k, row k counted from the bottom
+            waterfall.write(frame);
+        }
+
+        assertEquals(5, waterfall.getColumns());
+        assertEquals(2, waterfall.getStart(), "oldest column");
+        // frame 3 in column 0, frame 4 in column 1, frame 2 in column 2
+        assertEquals(GRADIENT[255], pixels[0 * 3 + 0]);
+        assertEquals(GRADIENT[0], pixels[3 * 3 + 0]);
+        assertEquals(GRADIENT[255], pixels[3 * 3 + 1]);
+        assertEquals(GRADIENT[255], pixels[1 * 3 + 2]);
+        assertEquals(GRADIENT[0], pixels[2 * 3 + 2]);
+    }
+
+    @Test
+    void channelsAndBarsPerRowTest()
+    {
+        // two channels of 8 bars on strips of 2 rows, 4 bars per row
+        var waterfall = new WaterfallRaster(1, 4, 2, 8, 100, GRADIENT);
+        waterfall.write(new double[] {0, 0, 0, 50, 0, 0, 0, 0,  0, 0, 0, 0, 0, 0, 0, 100});
+
+        var pixels = waterfall.getPixels();
+        assertEquals(GRADIENT[0], pixels[0]);
+        assertEquals(GRADIENT[127], pixels[1], "lower row of channel 0 shows its highest bar");
+        assertEquals(GRADIENT[255], pixels[2], "upper row of channel 1");
+        assertEquals(GRADIENT[0], pixels[3]);
+    }
+}
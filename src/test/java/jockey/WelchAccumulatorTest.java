@@ -0,0 +1,78 @@
+package jockey;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WelchAccumulatorTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void averagePeakAndMinTest()
+    {
+        var welch = new WelchAccumulator(2, 3, 10);
+        welch.add(0, new double[] {1, 2, 0}, new double[] {0, 0, 3});
+        welch.add(0, new double[] {3, 0, 0}, new double[] {0, 0, 1});
+        welch.add(1, new double[] {1, 1, 1}, new double[] {1, 1, 1});
+
+        var out = new double[3];
+        welch.getAverage(0, out);
+        assertArrayEquals(new double[] {5, 2, 5}, out);
+        welch.getPeak(0, out);
+        assertArrayEquals(new double[] {9, 4, 9}, out);
+        welch.getMin(0, out);
+        assertArrayEquals(new double[] {1, 0, 1}, out);
+        assertEquals(2, welch.getFrames(0));
+        assertEquals(1, welch.getFrames(1));
+
+        var csv = welch.toCsv().split("\n");
+        assertEquals("frequency,average_0,peak_0,min_0,average_1,peak_1,min_1", csv[0]);
+        assertEquals("20.000,5.00000,9.00000,1.00000,2.00000,2.00000,2.00000", csv[3]);
+
+        welch.reset();
+        welch.getAverage(0, out);
+        assertArrayEquals(new double[3], out);
+    }
+
+    @Test
+    void averagesWholeFileTest() throws Exception
+    {
+        var wav = BatchSpectrogramTest.writeSine(dir.resolve("sine.wav").toFile(), 8000f, 1, 1000, 8000);
+        try (var source = new MappedWavReader(wav)) {
+            var task = new PlayerTask(
+                null, source,
+                1024, 5_000_000,
+                4000f, false, 0, false,
+                256, 128, WindowFunction.HANN, false, false, false, false,
+                wav, null
+            );
+            var welch = task.accumulate();
+            task.call();
+
+            assertEquals(task.getFrames().getPublished(), welch.getFrames(0));
+            var average = new double[welch.getBins()];
+            welch.getAverage(0, average);
+            int peak = 0;
+            for (int k = 0; k < average.length; k++) if (average[k] > average[peak]) peak = k;
+            assertEquals(1000, peak * welch.getBinWidth(), welch.getBinWidth());
+
+            var min = new double[welch.getBins()];
+            var max = new double[welch.getBins()];
+            welch.getMin(0, min);
+            welch.getPeak(0, max);
+            for (int k = 0; k < average.length; k++) assertTrue(min[k] <= average[k] && average[k] <= max[k]);
+
+            var csv = dir.resolve("welch.csv");
+            welch.dump(csv);
+            assertEquals(welch.getBins() + 1, Files.readAllLines(csv).size());
+        }
+    }
+}